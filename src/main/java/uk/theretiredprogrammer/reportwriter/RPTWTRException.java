@@ -27,6 +27,10 @@ public class RPTWTRException extends Exception {
     public RPTWTRException(Throwable t) {
         super(t);
     }
+
+    public RPTWTRException(String message, Throwable t) {
+        super(message, t);
+    }
     
     public RPTWTRException(String message, S_Token token) {
         this(message,token.getLocator());
@@ -18,17 +18,31 @@ package uk.theretiredprogrammer.reportwriter;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
 import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
 import uk.theretiredprogrammer.reportwriter.language.Language;
 import uk.theretiredprogrammer.reportwriter.language.DefinitionSource;
 import uk.theretiredprogrammer.reportwriter.language.Lexer;
+import uk.theretiredprogrammer.reportwriter.language.Operand;
 import uk.theretiredprogrammer.reportwriter.language.Parser;
+import uk.theretiredprogrammer.reportwriter.language.functions.DataRecordField;
+import uk.theretiredprogrammer.reportwriter.language.functions.StringLiteral;
 
+// The statements are run lazily: only the datasets the reports need - those
+// they read, and those from which the generated datasets they need are made -
+// are loaded or generated, and the generated datasets are made in an order in
+// which each follows the generated dataset it is made from.
 public class ReportCompiler {
 
     private ExpressionMap compiledoutput;
+    private Set<String> neededdatasets; // null if every dataset may be needed
 
     @SuppressWarnings("UseSpecificCatch")
     public ReportCompiler(File deffile) {
@@ -41,6 +55,7 @@ public class ReportCompiler {
                 lexer.lex();
                 compiledoutput = DataTypes.isExpressionMap(parser.parse());
             }
+            neededdatasets = findNeededDataSets();
         } catch (Throwable t) {
             throw new RPTWTRRuntimeException(t);
         }
@@ -57,4 +72,185 @@ public class ReportCompiler {
     public ExpressionList getCompiledOutputReportsStatements() {
         return DataTypes.isExpressionList(compiledoutput, "reports");
     }
+
+    public boolean isNeeded(String datasetname) {
+        return neededdatasets == null || neededdatasets.contains(datasetname);
+    }
+
+    // the names of the needed generated_data statements, each after the
+    // statement generating the dataset it is made from
+    public List<String> getGeneratedDataStatementOrder() {
+        List<String> order = new ArrayList<>();
+        ExpressionMap generated = getCompiledOutputGeneratedDataStatements();
+        if (generated != null) {
+            generated.keySet().forEach(name -> addToOrder(name, generated, order, new HashSet<>()));
+        }
+        return order;
+    }
+
+    private void addToOrder(String name, ExpressionMap generated, List<String> order, Set<String> inprogress) {
+        if (order.contains(name) || !isNeeded(name)) {
+            return;
+        }
+        if (!inprogress.add(name)) {
+            throw new RPTWTRRuntimeException("generated_data " + name + " is made from itself");
+        }
+        Operand<?> using = DataTypes.isExpressionMap(generated.get(name)).get("using");
+        if (using instanceof StringLiteral && generated.containsKey(using.toString())) {
+            addToOrder(using.toString(), generated, order, inprogress);
+        }
+        order.add(name);
+    }
+
+    // returns null if a statement the reports need is not using a literal name,
+    // as it may then be using any dataset
+    private Set<String> findNeededDataSets() {
+        Set<String> needed = new HashSet<>();
+        ExpressionList reports = getCompiledOutputReportsStatements();
+        if (reports != null) {
+            for (Operand<?> report : reports) {
+                if (!addNeededDataSet(DataTypes.isExpressionMap(report).get("using"), needed)) {
+                    return null;
+                }
+            }
+        }
+        return needed;
+    }
+
+    private boolean addNeededDataSet(Operand<?> using, Set<String> needed) {
+        if (!(using instanceof StringLiteral)) {
+            return false;
+        }
+        String datasetname = using.toString();
+        if (!needed.add(datasetname)) {
+            return true;
+        }
+        ExpressionMap generated = getCompiledOutputGeneratedDataStatements();
+        Operand<?> parameters = generated == null ? null : generated.get(datasetname);
+        return parameters == null || addNeededDataSet(DataTypes.isExpressionMap(parameters).get("using"), needed);
+    }
+
+    // the filter of the only generated_data or reports statement reading a
+    // dataset, which can be applied as the dataset is loaded; returns null if
+    // the dataset is read by more than one statement or not filtered
+    public BooleanExpression getPushdownFilter(String datasetname) {
+        List<ExpressionMap> consumers = getConsumers(datasetname);
+        if (consumers.size() != 1 || !(consumers.get(0).get("using") instanceof StringLiteral)) {
+            return null;
+        }
+        return DataTypes.isBooleanExpression(consumers.get(0), "filter");
+    }
+
+    // the number of generated_data and reports statements reading a dataset;
+    // returns -1 if it cannot be known before the statements are run
+    public int getConsumerCount(String datasetname) {
+        List<ExpressionMap> consumers = getConsumers(datasetname);
+        return consumers.stream().allMatch(parameters -> parameters.get("using") instanceof StringLiteral) ? consumers.size() : -1;
+    }
+
+    private List<ExpressionMap> getConsumers(String datasetname) {
+        List<ExpressionMap> statements = new ArrayList<>();
+        ExpressionMap generated = getCompiledOutputGeneratedDataStatements();
+        if (generated != null) {
+            for (String name : generated.keySet()) {
+                if (isNeeded(name)) {
+                    statements.add(DataTypes.isExpressionMap(generated.get(name)));
+                }
+            }
+        }
+        ExpressionList reports = getCompiledOutputReportsStatements();
+        if (reports != null) {
+            for (Operand<?> report : reports) {
+                statements.add(DataTypes.isExpressionMap(report));
+            }
+        }
+        return statements.stream()
+                .filter(parameters -> isUsing(parameters, datasetname))
+                .toList();
+    }
+
+    // whether more than one needed generated_data statement sorts the dataset
+    // by the same sort_by fields
+    public boolean isSortShared(String datasetname, ExpressionList sortfields) {
+        List<?> sortfieldnames = sortfields.evaluate(DataRecord.EMPTY);
+        ExpressionMap generated = getCompiledOutputGeneratedDataStatements();
+        return generated.keySet().stream()
+                .filter(name -> isNeeded(name))
+                .map(name -> DataTypes.isExpressionMap(generated.get(name)))
+                .filter(parameters -> parameters.get("using") instanceof StringLiteral && parameters.get("using").toString().equals(datasetname))
+                .map(parameters -> DataTypes.isExpressionList(parameters, "sort_by"))
+                .filter(othersortfields -> othersortfields != null && othersortfields.evaluate(DataRecord.EMPTY).equals(sortfieldnames))
+                .count() > 1;
+    }
+
+    // the names of the fields of a dataset which are used by the generated_data
+    // and reports statements reading it (directly or through generated datasets);
+    // returns null if the names cannot all be known before the data is loaded
+    public Set<String> getReferencedFields(String datasetname) {
+        Set<String> fields = new HashSet<>();
+        return addReferencedFields(datasetname, fields, new HashSet<>()) ? fields : null;
+    }
+
+    private boolean addReferencedFields(String datasetname, Set<String> fields, Set<String> visited) {
+        if (!visited.add(datasetname)) {
+            return true;
+        }
+        ExpressionMap generated = getCompiledOutputGeneratedDataStatements();
+        if (generated != null) {
+            for (String name : generated.keySet()) {
+                ExpressionMap parameters = DataTypes.isExpressionMap(generated.get(name));
+                if (isNeeded(name) && isUsing(parameters, datasetname)
+                        && !(addReferencedFields(parameters.get("filter"), fields)
+                        && addSortFields(parameters.get("sort_by"), fields)
+                        && addReferencedFields(name, fields, visited))) {
+                    return false;
+                }
+            }
+        }
+        ExpressionList reports = getCompiledOutputReportsStatements();
+        if (reports != null) {
+            for (Operand<?> report : reports) {
+                ExpressionMap parameters = DataTypes.isExpressionMap(report);
+                if (isUsing(parameters, datasetname)
+                        && !(addReferencedFields(parameters.get("filter"), fields)
+                        && addReferencedFields(parameters.get("headers"), fields)
+                        && addReferencedFields(parameters.get("fields"), fields))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // a statement whose source is not a literal name may be using any dataset
+    private boolean isUsing(ExpressionMap parameters, String datasetname) {
+        Operand<?> using = parameters.get("using");
+        return !(using instanceof StringLiteral) || using.toString().equals(datasetname);
+    }
+
+    private boolean addSortFields(Operand<?> sortfields, Set<String> fields) {
+        if (sortfields != null) {
+            for (Operand<?> sortfield : sortfields.getOperands()) {
+                if (!(sortfield instanceof StringLiteral)) {
+                    return false;
+                }
+                fields.add(sortfield.toString());
+            }
+        }
+        return true;
+    }
+
+    private boolean addReferencedFields(Operand<?> expression, Set<String> fields) {
+        if (expression == null) {
+            return true;
+        }
+        if (expression instanceof DataRecordField field) {
+            if (!(field.getFieldNameExpression() instanceof StringLiteral)) {
+                return false;
+            }
+            fields.add(field.getFieldNameExpression().toString());
+            return true;
+        }
+        return expression.getOperands().stream().allMatch(operand -> addReferencedFields(operand, fields));
+    }
 }
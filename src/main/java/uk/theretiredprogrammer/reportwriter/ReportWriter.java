@@ -16,6 +16,16 @@
 package uk.theretiredprogrammer.reportwriter;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import uk.theretiredprogrammer.reportwriter.datasource.DataSetFromCSV;
 import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
 import uk.theretiredprogrammer.reportwriter.datasource.DataSetStream;
@@ -36,20 +46,59 @@ public class ReportWriter {
     @SuppressWarnings("UseSpecificCatch")
     public ReportWriter(File f) throws RPTWTRException {
         compiled = new ReportCompiler(f);
+        ExpressionMap datadefs = compiled.getCompiledOutputDataStatements();
+        if (datadefs != null) {
+            datadefs.keySet().forEach(name -> datasets.setConsumerCount(name, compiled.getConsumerCount(name)));
+        }
+        ExpressionMap generated = compiled.getCompiledOutputGeneratedDataStatements();
+        if (generated != null) {
+            generated.keySet().forEach(name -> datasets.setConsumerCount(name, compiled.getConsumerCount(name)));
+        }
     }
 
+    // the data statements are loaded concurrently; any failures are reported
+    // together, once all the loads have finished. The files of datasets which
+    // no report needs are not opened.
     public void loadDataFiles() throws RPTWTRException {
+        Map<String, Future<?>> loads = new LinkedHashMap<>();
+        ExecutorService executor = null;
         try {
             ExpressionMap datadefs = compiled.getCompiledOutputDataStatements();
-            datadefs.entrySet().stream()
-                    .forEach(nameandparameters -> {
-                        datasets.saveDataSet(nameandparameters.getKey(),
-                                DataSetFromCSV.create(
-                                        nameandparameters.getKey(),
-                                        DataTypes.isExpressionMap(nameandparameters.getValue())));
-                    });
+            List<String> names = datadefs.keySet().stream().filter(name -> compiled.isNeeded(name)).toList();
+            executor = Executors.newFixedThreadPool(Math.max(1, Math.min(names.size(), Runtime.getRuntime().availableProcessors())));
+            for (String name : names) {
+                ExpressionMap parameters = DataTypes.isExpressionMap(datadefs.get(name));
+                Set<String> fields = compiled.getReferencedFields(name);
+                BooleanExpression filter = compiled.getPushdownFilter(name);
+                loads.put(name, executor.submit(
+                        () -> datasets.saveDataSet(name, DataSetFromCSV.create(name, parameters, fields, filter))));
+            }
         } catch (Throwable t) {
             throw new RPTWTRException(t);
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        List<String> failures = new ArrayList<>();
+        Throwable firstfailure = null;
+        for (Entry<String, Future<?>> nameandload : loads.entrySet()) {
+            try {
+                nameandload.getValue().get();
+            } catch (ExecutionException ex) {
+                failures.add("data statement " + nameandload.getKey() + ": " + ex.getCause());
+                if (firstfailure == null) {
+                    firstfailure = ex.getCause();
+                } else {
+                    firstfailure.addSuppressed(ex.getCause());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RPTWTRException(ex);
+            }
+        }
+        if (firstfailure != null) {
+            throw new RPTWTRException(String.join("\n", failures), firstfailure);
         }
     }
 
@@ -58,22 +107,28 @@ public class ReportWriter {
         try {
             var generated = compiled.getCompiledOutputGeneratedDataStatements();
             if (generated != null) {
-                generated.entrySet()
-                    .forEach(nameandparameters -> {
-                        String toname = nameandparameters.getKey();
-                        ExpressionMap parameters = DataTypes.isExpressionMap(nameandparameters.getValue());
+                compiled.getGeneratedDataStatementOrder()
+                    .forEach(toname -> {
+                        ExpressionMap parameters = DataTypes.isExpressionMap(generated.get(toname));
                         String fromname = DataTypes.getRequiredString(parameters, "using", "generated_data");
                         StoredDataSet from = datasets.getDataSet(fromname);
-                        DataSetStream datarecordsstream = from.createDataRecordStream();
                         BooleanExpression filterexpression = DataTypes.isBooleanExpression(parameters, "filter");
-                        if (filterexpression != null) {
-                            datarecordsstream = datarecordsstream.createDataSetStream(datarecordsstream.filter(filterexpression));
-                        }
                         ExpressionList sortfields = DataTypes.isExpressionList(parameters, "sort_by");
-                        if (sortfields != null) {
+                        // a sort order shared with another statement is kept by the dataset, and
+                        // its rows read in that order; any other sort is of the filtered records,
+                        // and as sorting holds on to the records, needs a record per row
+                        DataSetStream datarecordsstream = null;
+                        if (sortfields == null) {
+                            datarecordsstream = from.createDataRecordCursor(filterexpression);
+                        } else if (compiled.isSortShared(fromname, sortfields)) {
+                            datarecordsstream = from.createSortedDataRecordCursor(sortfields, filterexpression);
+                        }
+                        if (datarecordsstream == null) {
+                            datarecordsstream = from.createDataRecordStream(filterexpression);
                             datarecordsstream = datarecordsstream.createDataSetStream(datarecordsstream.sort(sortfields));
                         }
                         datasets.saveDataSet(toname, datarecordsstream.createStoredDataSet());
+                        datasets.consumed(fromname);
                         if (Configuration.getDefault().getArgConfiguration().isListCmd()) {
                             System.out.println("generating " + toname + " from " + fromname);
                         }
@@ -89,27 +144,26 @@ public class ReportWriter {
             compiled.getCompiledOutputReportsStatements().stream()
                     .forEachOrdered((operand) -> {
                         ExpressionMap map = DataTypes.isExpressionMap(operand);
-                        StoredDataSet primarydataset = datasets.getDataSet(DataTypes.getRequiredString(map, "using", "reports"));
-                        DataSetStream primarystream = primarydataset.createDataRecordStream();
+                        String usingname = DataTypes.getRequiredString(map, "using", "reports");
+                        StoredDataSet primarydataset = datasets.getDataSet(usingname);
                         ExpressionList headers = DataTypes.isExpressionList(map, "headers");
                         BooleanExpression filterexpression = DataTypes.isBooleanExpression(map, "filter");
                         ExpressionList fields = DataTypes.getRequiredList(map, "fields", "reports");
                         String to = DataTypes.isStringLiteral(map, "to");
                         String title = DataTypes.isStringLiteral(map, "title");
-                        if (filterexpression != null) {
-                            primarystream = primarystream.createDataSetStream(primarystream.filter(filterexpression));
-                        }
+                        DataSetStream primarystream = primarydataset.createDataRecordCursor(filterexpression);
                         StoredDataSet dataset = primarystream.createStoredDataSet();
                         if (!dataset.isEmpty()) {
                             var headerfields = dataset.evaluateheaders(headers);
-                            primarystream = dataset.createDataRecordStream(headerfields);
-                            primarystream = primarystream.createDataSetStreamIncludeHeader(primarystream.buildNewDataRecordStream(fields));
+                            primarystream = dataset.createDataRecordCursor(headerfields);
+                            primarystream = primarystream.createDataSetStreamIncludeHeader(primarystream.buildNewDataRecordCursor(fields));
                             if (to == null) {
                                 DataSetToSysout.display(title, primarystream);
                             } else {
                                 DataSetToCSV.save(to, primarystream);
                             }
                         }
+                        datasets.consumed(usingname);
                     });
         } catch (Throwable t) {
             throw new RPTWTRException(t);
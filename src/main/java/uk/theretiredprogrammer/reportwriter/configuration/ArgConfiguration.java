@@ -25,6 +25,7 @@ public class ArgConfiguration {
     private String downloaddir = null;
     private String projectdir = null;
     private String outputdir = null;
+    private String cachedir = null;
     private String definitionfile = null;
     private final List<String> commandparameters = new ArrayList<>();
     private boolean save = false;
@@ -45,6 +46,9 @@ public class ArgConfiguration {
         if (outputdir != null) {
             p.setProperty("outputdir", outputdir);
         }
+        if (cachedir != null) {
+            p.setProperty("cachedir", cachedir);
+        }
         return p;
     }
 
@@ -90,6 +94,8 @@ public class ArgConfiguration {
                     projectdir = argrdr.next();
                 case "--outputdir" ->
                     outputdir = argrdr.next();
+                case "--cachedir" ->
+                    cachedir = argrdr.next();
                 case "--save" ->
                     save = true;
                 case "--clear" ->
@@ -106,6 +112,8 @@ public class ArgConfiguration {
                     projectdir = argrdr.next();
                 case "-od" ->
                     outputdir = argrdr.next();
+                case "-cd" ->
+                    cachedir = argrdr.next();
                 case "-s" ->
                     save = true;
                 case "-c" ->
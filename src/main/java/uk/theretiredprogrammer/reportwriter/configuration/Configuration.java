@@ -48,6 +48,7 @@ public class Configuration {
     private File downloaddir;
     private File projectdir;
     private File outputdir;
+    private File cachedir;
     private File reportfile;
 
     private Configuration() {
@@ -73,12 +74,16 @@ public class Configuration {
             downloaddir = findDir("downloaddir", "Downloads");
             projectdir = findDir("projectdir", systemproperties.getProperty("user.dir"));
             outputdir = findOutputDir();
+            cachedir = getPropertyValue("cachedir") == null ? null : findDir("cachedir", null);
             reportfile = findReportFile();
             if (argconfiguration.isListCmd()) {
                 System.out.println("\n Current Directory Parameters and Resulting Paths\n");
                 System.out.println("downloadir is " + getPropertyValue("downloaddir") + " expands to " + downloaddir.getCanonicalPath());
                 System.out.println("projectdir is " + getPropertyValue("projectdir") + " expands to " + projectdir.getCanonicalPath());
                 System.out.println("outputdir is " + getPropertyValue("outputdir") + " expands to " + outputdir.getCanonicalPath());
+                if (cachedir != null) {
+                    System.out.println("cachedir is " + getPropertyValue("cachedir") + " expands to " + cachedir.getCanonicalPath());
+                }
             }
             if (argconfiguration.isSaveCmd()) {
                 String dd = argproperties.getProperty("downloaddir");
@@ -93,6 +98,10 @@ public class Configuration {
                 if (od != null) {
                     userproperties.setProperty("outputdir", od);
                 }
+                String cd = argproperties.getProperty("cachedir");
+                if (cd != null) {
+                    userproperties.setProperty("cachedir", cd);
+                }
                 saveUserConfig();
             }
         } catch (Throwable t) {
@@ -179,6 +188,11 @@ public class Configuration {
         return outputdir;
     }
 
+    // null if no snapshot cache is configured
+    public File getCacheDir() {
+        return cachedir;
+    }
+
     public File getReportFile() {
         return reportfile;
     }
@@ -227,6 +241,10 @@ public class Configuration {
         if (od != null) {
             envproperties.setProperty("outputdir", od);
         }
+        String cd = envmap.get("RPTWTR_cd");
+        if (cd != null) {
+            envproperties.setProperty("cachedir", cd);
+        }
     }
 
     private static final String USERCONFIGFILE = ".reportwriter";
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+
+// CSV parser working directly on the raw bytes of an ASCII compatible encoding;
+// it follows the same rules as the character state machine in DataSetFromCSV,
+// but only decodes a field into a String once its extent is known. Columns which
+// are not wanted are scanned but not decoded, and are returned as empty fields.
+//
+// The fields are passed to the record processor in a single list, cleared and
+// refilled for each record, so a processor wanting to keep them must copy them.
+class CSVByteParser {
+
+    private static final int UNTERMINATED = -2;
+
+    private final Charset charset;
+    private final Supplier<boolean[]> parsedcolumns;
+    private final Consumer<List<String>> recordprocessor;
+    private final List<String> fields = new ArrayList<>();
+    private boolean[] columns;
+    private byte[] fieldbytes = new byte[256];
+    private int fieldlength;
+
+    // parsedcolumns supplies the columns to decode (all if null) at the start of each record
+    CSVByteParser(Charset charset, Supplier<boolean[]> parsedcolumns, Consumer<List<String>> recordprocessor) {
+        this.charset = charset;
+        this.parsedcolumns = parsedcolumns;
+        this.recordprocessor = recordprocessor;
+    }
+
+    // parses the complete records in buffer[from, limit) and returns the offset
+    // following the last complete record; if eof is set any final unterminated
+    // record is completed.
+    int parse(ByteBuffer buffer, int from, int limit, boolean eof) {
+        int offset = from;
+        while (offset < limit) {
+            int next = parseRecord(buffer, offset, limit, eof);
+            if (next < 0) {
+                break;
+            }
+            offset = next;
+        }
+        return offset;
+    }
+
+    // returns the offset following the record, or -1 if the record is incomplete
+    int parseRecord(ByteBuffer buffer, int from, int limit, boolean eof) {
+        fields.clear();
+        columns = parsedcolumns.get();
+        int offset = from;
+        while (true) {
+            while (offset < limit && buffer.get(offset) == ' ') {
+                offset++;
+            }
+            if (offset >= limit) {
+                if (!eof) {
+                    return -1;
+                }
+                fields.add("");
+                return endRecord(limit);
+            }
+            byte b = buffer.get(offset);
+            switch (b) {
+                case '\n', '\r' -> {
+                    fields.add("");
+                    return endOfLine(buffer, offset, limit, eof);
+                }
+                case ',' -> {
+                    fields.add("");
+                    offset++;
+                }
+                case '"' -> {
+                    offset = quotedField(buffer, offset + 1, limit, eof);
+                    if (offset == UNTERMINATED) {
+                        return limit;
+                    }
+                    if (offset < 0) {
+                        return -1;
+                    }
+                    while (offset < limit && buffer.get(offset) == ' ') {
+                        offset++;
+                    }
+                    if (offset >= limit) {
+                        return eof ? endRecord(limit) : -1;
+                    }
+                    switch (buffer.get(offset)) {
+                        case ',' ->
+                            offset++;
+                        case '\n', '\r' -> {
+                            return endOfLine(buffer, offset, limit, eof);
+                        }
+                        default ->
+                            throw new RPTWTRRuntimeException("Badly formatted CSV (extra text after closing quote): " + getLine(buffer, offset, limit));
+                    }
+                }
+                default -> {
+                    int end = DelimiterSearch.indexOfAny(buffer, offset + 1, limit, (byte) ',', (byte) '\n', (byte) '\r');
+                    if (end >= limit && !eof) {
+                        return -1;
+                    }
+                    fields.add(isParsedColumn() ? decode(buffer, offset, end - offset) : "");
+                    if (end >= limit) {
+                        return endRecord(limit);
+                    }
+                    if (buffer.get(end) != ',') {
+                        return endOfLine(buffer, end, limit, eof);
+                    }
+                    offset = end + 1;
+                }
+            }
+        }
+    }
+
+    // returns the offset following the closing quote, or -1 if the field is incomplete;
+    // an unterminated quoted field at eof drops the record, as the character parser does
+    private int quotedField(ByteBuffer buffer, int from, int limit, boolean eof) {
+        fieldlength = 0;
+        boolean parsed = isParsedColumn();
+        int offset = from;
+        while (true) {
+            int special = DelimiterSearch.indexOfAny(buffer, offset, limit, (byte) '"', (byte) '\r', (byte) '"');
+            if (parsed) {
+                appendRange(buffer, offset, special - offset);
+            }
+            if (special >= limit) {
+                return eof ? UNTERMINATED : -1;
+            }
+            offset = special + 1;
+            if (offset >= limit && !eof) {
+                return -1;
+            }
+            if (buffer.get(special) == '"') {
+                if (offset < limit && buffer.get(offset) == '"') {
+                    append((byte) '"');
+                    offset++;
+                } else {
+                    fields.add(parsed ? new String(fieldbytes, 0, fieldlength, charset) : "");
+                    return offset;
+                }
+            } else {
+                if (offset < limit && buffer.get(offset) == '\n') {
+                    offset++;
+                }
+                append((byte) '\n');
+            }
+        }
+    }
+
+    private boolean isParsedColumn() {
+        int column = fields.size();
+        return columns == null || column >= columns.length || columns[column];
+    }
+
+    private void append(byte b) {
+        ensureCapacity(fieldlength + 1);
+        fieldbytes[fieldlength++] = b;
+    }
+
+    private void appendRange(ByteBuffer buffer, int offset, int length) {
+        ensureCapacity(fieldlength + length);
+        buffer.get(offset, fieldbytes, fieldlength, length);
+        fieldlength += length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > fieldbytes.length) {
+            byte[] larger = new byte[Math.max(capacity, fieldbytes.length * 2)];
+            System.arraycopy(fieldbytes, 0, larger, 0, fieldlength);
+            fieldbytes = larger;
+        }
+    }
+
+    private String decode(ByteBuffer buffer, int offset, int length) {
+        fieldlength = 0;
+        ensureCapacity(length);
+        buffer.get(offset, fieldbytes, 0, length);
+        return new String(fieldbytes, 0, length, charset);
+    }
+
+    private int endOfLine(ByteBuffer buffer, int offset, int limit, boolean eof) {
+        if (buffer.get(offset) == '\r') {
+            if (offset + 1 >= limit && !eof) {
+                return -1;
+            }
+            if (offset + 1 < limit && buffer.get(offset + 1) == '\n') {
+                offset++;
+            }
+        }
+        return endRecord(offset + 1);
+    }
+
+    private int endRecord(int next) {
+        recordprocessor.accept(fields);
+        return next;
+    }
+
+    private String getLine(ByteBuffer buffer, int offset, int limit) {
+        int start = offset;
+        while (start > 0 && buffer.get(start - 1) != '\n' && buffer.get(start - 1) != '\r') {
+            start--;
+        }
+        int end = offset;
+        while (end < limit && buffer.get(end) != '\n' && buffer.get(end) != '\r') {
+            end++;
+        }
+        return decode(buffer, start, end - start);
+    }
+}
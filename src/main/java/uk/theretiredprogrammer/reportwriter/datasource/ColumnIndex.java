@@ -0,0 +1,71 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+// The rows of a dataset holding each value of a column, in row order.
+class ColumnIndex {
+
+    private final int rowcount;
+    private final Map<String, int[]> index;
+
+    ColumnIndex(int rowcount, IntFunction<String> values) {
+        this.rowcount = rowcount;
+        Map<String, RowList> rowlists = new HashMap<>();
+        for (int row = 0; row < rowcount; row++) {
+            rowlists.computeIfAbsent(values.apply(row), value -> new RowList()).add(row);
+        }
+        index = new HashMap<>(rowlists.size() * 4 / 3 + 1);
+        rowlists.forEach((value, rowlist) -> index.put(value, rowlist.toArray()));
+    }
+
+    RowBitmap getRows(String value) {
+        return RowBitmap.of(rowcount, index.getOrDefault(value, new int[0]));
+    }
+
+    RowBitmap getRowsIgnoringCase(String value) {
+        RowBitmap rows = new RowBitmap(rowcount);
+        for (var entry : index.entrySet()) {
+            if (entry.getKey() != null && entry.getKey().equalsIgnoreCase(value)) {
+                for (int row : entry.getValue()) {
+                    rows.add(row);
+                }
+            }
+        }
+        return rows.compact();
+    }
+
+    private static class RowList {
+
+        private int[] rows = new int[4];
+        private int count = 0;
+
+        void add(int row) {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, count * 2);
+            }
+            rows[count++] = row;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(rows, count);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+// The type of a column's values: strings, or values which can be held as a
+// long - decimals (whole numbers being decimals of scale 0) or ISO dates (as
+// their epoch day). A decimal column has the largest scale of its values: each
+// value is held as its unscaled value at the column's scale, shifted left by
+// SCALEBITS, with its own scale in the low bits. So the longs order as the
+// numbers do ("9" before "9.5" before "10"), ties being ordered by their own
+// scale, and each formats back to the string it was parsed from. Only a value
+// in its canonical form (no sign on zero, no leading zeros, no more than 9
+// decimal places) is parsed.
+class ColumnType {
+
+    static final ColumnType STRING = new ColumnType(false, 0);
+    static final ColumnType DATE = new ColumnType(true, 0);
+
+    // the empty string, held in a typed column; it orders before any value
+    static final long EMPTY = Long.MIN_VALUE;
+    // the result of parsing a value which the type cannot hold
+    static final long INVALID = Long.MIN_VALUE + 1;
+
+    static final int SCALEBITS = 4;
+    private static final int MAXDIGITS = 17; // so that a shifted value fits in a long
+    private static final int MAXSCALE = 9;
+    private static final ColumnType[] DECIMALS = new ColumnType[MAXSCALE + 1];
+    private static final long[] POWERS = new long[MAXDIGITS + 1];
+
+    static {
+        for (int scale = 0; scale <= MAXSCALE; scale++) {
+            DECIMALS[scale] = new ColumnType(false, scale);
+        }
+        POWERS[0] = 1;
+        for (int digits = 1; digits <= MAXDIGITS; digits++) {
+            POWERS[digits] = POWERS[digits - 1] * 10;
+        }
+    }
+
+    // the type suggested by a non-empty value
+    static ColumnType infer(String value) {
+        if (DATE.parse(value) != INVALID) {
+            return DATE;
+        }
+        int point = value.indexOf('.');
+        int scale = point < 0 ? 0 : value.length() - point - 1;
+        return scale <= MAXSCALE && DECIMALS[scale].parse(value) != INVALID ? DECIMALS[scale] : STRING;
+    }
+
+    // the type with the number (see getNumber), or null if there is none
+    static ColumnType ofNumber(int number) {
+        return switch (number) {
+            case 0 ->
+                STRING;
+            case 1 ->
+                DATE;
+            default ->
+                number >= 2 && number - 2 <= MAXSCALE ? DECIMALS[number - 2] : null;
+        };
+    }
+
+    private final boolean date;
+    private final int scale;
+
+    private ColumnType(boolean date, int scale) {
+        this.date = date;
+        this.scale = scale;
+    }
+
+    // the type's number, as held in a snapshot
+    int getNumber() {
+        return this == STRING ? 0 : date ? 1 : 2 + scale;
+    }
+
+    long parse(String value) {
+        if (value == null || this == STRING) {
+            return INVALID;
+        }
+        if (value.isEmpty()) {
+            return EMPTY;
+        }
+        return date ? parseDate(value) : parseDecimal(value);
+    }
+
+    String format(long value) {
+        if (value == EMPTY) {
+            return "";
+        }
+        return date ? LocalDate.ofEpochDay(value).toString() : formatDecimal(value);
+    }
+
+    // the type which can hold the values of both types - the decimal of the
+    // larger scale, if both are decimals
+    ColumnType merge(ColumnType other) {
+        if (other == this) {
+            return this;
+        }
+        return date || other.date || this == STRING || other == STRING ? STRING : DECIMALS[Math.max(scale, other.scale)];
+    }
+
+    // a value of the narrower decimal type, as held by this type
+    long widen(long value, ColumnType from) {
+        if (value == EMPTY) {
+            return EMPTY;
+        }
+        long factor = POWERS[scale - from.scale];
+        long unscaled = value >> SCALEBITS;
+        if (Math.abs(unscaled) >= POWERS[MAXDIGITS] / factor) {
+            return INVALID;
+        }
+        return (unscaled * factor) << SCALEBITS | (value & ((1 << SCALEBITS) - 1));
+    }
+
+    private long parseDate(String value) {
+        if (value.length() != 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return INVALID;
+        }
+        int year = parseDigits(value, 0, 4);
+        int month = parseDigits(value, 5, 7);
+        int day = parseDigits(value, 8, 10);
+        if (year < 0 || month < 0 || day < 0) {
+            return INVALID;
+        }
+        try {
+            return LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException ex) {
+            return INVALID;
+        }
+    }
+
+    private int parseDigits(String value, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + c - '0';
+        }
+        return result;
+    }
+
+    private long parseDecimal(String value) {
+        int length = value.length();
+        boolean negative = value.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        int i = start;
+        long result = 0;
+        while (i < length && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+            result = result * 10 + value.charAt(i++) - '0';
+        }
+        int integerdigits = i - start;
+        if (integerdigits == 0 || integerdigits + scale > MAXDIGITS || (integerdigits > 1 && value.charAt(start) == '0')) {
+            return INVALID;
+        }
+        int valuescale = 0;
+        if (i < length) {
+            valuescale = length - i - 1;
+            if (valuescale == 0 || valuescale > scale || value.charAt(i++) != '.') {
+                return INVALID;
+            }
+            while (i < length) {
+                char c = value.charAt(i++);
+                if (c < '0' || c > '9') {
+                    return INVALID;
+                }
+                result = result * 10 + c - '0';
+            }
+        }
+        if (negative && result == 0) {
+            return INVALID;
+        }
+        result *= POWERS[scale - valuescale];
+        return (negative ? -result : result) << SCALEBITS | valuescale;
+    }
+
+    private String formatDecimal(long value) {
+        int valuescale = (int) (value & ((1 << SCALEBITS) - 1));
+        long unscaled = (value >> SCALEBITS) / POWERS[scale - valuescale];
+        if (valuescale == 0) {
+            return Long.toString(unscaled);
+        }
+        String digits = Long.toString(Math.abs(unscaled));
+        if (digits.length() <= valuescale) {
+            digits = "0".repeat(valuescale + 1 - digits.length()) + digits;
+        }
+        int point = digits.length() - valuescale;
+        return (unscaled < 0 ? "-" : "") + digits.substring(0, point) + "." + digits.substring(point);
+    }
+}
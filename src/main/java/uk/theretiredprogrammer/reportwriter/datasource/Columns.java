@@ -0,0 +1,215 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// The values of a StoredDataSet, by column and row. Rows are added in order,
+// each row having every column set before the next is started.
+//
+// A column's values are held as strings until SAMPLESIZE rows have been added
+// (or the column is first compared), when its type is inferred from them. A
+// column of numbers or ISO dates is then held as longs and compared as
+// numbers. A later number of a larger scale widens the column to that scale;
+// should a later value not fit the type, the column reverts to strings.
+// Either way, every value reads back exactly as it was set.
+//
+// A column of strings with few distinct values in the sample is dictionary
+// encoded: each value is held as the int code of its entry in the column's
+// dictionary. Should the dictionary fill, the column reverts to strings.
+//
+// Every value set is also summarised in the zone map of its block of rows.
+abstract class Columns {
+
+    static final int SAMPLESIZE = 1024;
+    static final int MAXSAMPLEDISTINCT = SAMPLESIZE / 4;
+
+    private final ColumnType[] types; // a column's type is null until inferred
+    private final Dictionary[] dictionaries; // null unless the column is encoded
+    private final ZoneMap zonemap;
+    private int rowcount = 0;
+
+    Columns(int columncount) {
+        types = new ColumnType[columncount];
+        dictionaries = new Dictionary[columncount];
+        zonemap = new ZoneMap(columncount);
+    }
+
+    // makes room for rows 0 to rows-1
+    abstract void ensureCapacity(int rows);
+
+    abstract String getString(int column, int row);
+
+    abstract void setString(int column, int row, String value);
+
+    abstract long getLong(int column, int row);
+
+    abstract void setLong(int column, int row, long value);
+
+    abstract int getCode(int column, int row);
+
+    abstract void setCode(int column, int row, int code);
+
+    // changes the first rows of a column from strings to the type's longs
+    abstract void convertToLongs(int column, int rows, ColumnType type);
+
+    // changes the first rows of a column from the type's longs to strings
+    abstract void convertToStrings(int column, int rows, ColumnType type);
+
+    // changes the first rows of a column from strings to their dictionary codes
+    abstract void convertToCodes(int column, int rows, Dictionary dictionary);
+
+    // changes the first rows of a column from dictionary codes to strings
+    abstract void convertToStrings(int column, int rows, Dictionary dictionary);
+
+    void set(int column, int row, String value) {
+        rowcount = Math.max(rowcount, row + 1);
+        zonemap.add(column, row, value);
+        ColumnType type = types[column];
+        Dictionary dictionary = dictionaries[column];
+        if (type != null && type != ColumnType.STRING) {
+            long longvalue = type.parse(value);
+            if (longvalue == ColumnType.INVALID) {
+                ColumnType wider = type.merge(ColumnType.infer(value));
+                if (wider != type && wider != ColumnType.STRING && widen(column, row, type, wider)) {
+                    type = wider;
+                    longvalue = type.parse(value);
+                }
+            }
+            if (longvalue != ColumnType.INVALID) {
+                setLong(column, row, longvalue);
+                return;
+            }
+            convertToStrings(column, row, type);
+            types[column] = ColumnType.STRING;
+        } else if (dictionary != null) {
+            int code = dictionary.getCode(value);
+            if (code >= 0) {
+                setCode(column, row, code);
+                return;
+            }
+            convertToStrings(column, row, dictionary);
+            dictionaries[column] = null;
+        }
+        setString(column, row, value);
+        if (type == null && row + 1 == SAMPLESIZE) {
+            inferType(column, SAMPLESIZE);
+        }
+    }
+
+    String get(int column, int row) {
+        ColumnType type = types[column];
+        if (type != null && type != ColumnType.STRING) {
+            return type.format(getLong(column, row));
+        }
+        Dictionary dictionary = dictionaries[column];
+        return dictionary == null ? getString(column, row) : dictionary.getValue(getCode(column, row));
+    }
+
+    int compare(int column, int row1, int row2) {
+        if (getType(column) == ColumnType.STRING) {
+            return get(column, row1).compareTo(get(column, row2));
+        }
+        return Long.compare(getLong(column, row1), getLong(column, row2));
+    }
+
+    ColumnType getType(int column) {
+        if (types[column] == null) {
+            inferType(column, rowcount);
+        }
+        return types[column];
+    }
+
+    // starts a column, which has no values yet, as held by the type and
+    // dictionary (see getType and getDictionary), so that its first rows can
+    // be set directly (as a snapshot does); the capacity must already allow
+    // for the rows
+    void startColumn(int column, int rows, ColumnType type, Dictionary dictionary) {
+        rowcount = Math.max(rowcount, rows);
+        types[column] = type;
+        dictionaries[column] = dictionary;
+        if (type != ColumnType.STRING) {
+            convertToLongs(column, 0, type);
+        } else if (dictionary != null) {
+            convertToCodes(column, 0, dictionary);
+        }
+    }
+
+    ZoneMap getZoneMap() {
+        return zonemap;
+    }
+
+    // the column's dictionary, or null if it is not dictionary encoded
+    Dictionary getDictionary(int column) {
+        getType(column);
+        return dictionaries[column];
+    }
+
+    // a column of nothing but empty values is left as strings; a column of
+    // numbers takes the largest scale of the sample, provided every number
+    // still fits
+    private void inferType(int column, int rows) {
+        ColumnType type = null;
+        for (int row = 0; row < rows && type != ColumnType.STRING; row++) {
+            String value = getString(column, row);
+            if (value == null) {
+                type = ColumnType.STRING;
+            } else if (!value.isEmpty()) {
+                type = type == null ? ColumnType.infer(value) : type.merge(ColumnType.infer(value));
+            }
+        }
+        for (int row = 0; row < rows && type != null && type != ColumnType.STRING; row++) {
+            if (type.parse(getString(column, row)) == ColumnType.INVALID) {
+                type = ColumnType.STRING;
+            }
+        }
+        if (type == null || type == ColumnType.STRING) {
+            types[column] = ColumnType.STRING;
+            encode(column, rows);
+        } else {
+            convertToLongs(column, rows, type);
+            types[column] = type;
+        }
+    }
+
+    // changes the first rows of a column to the wider type, unless a value
+    // would not fit it
+    private boolean widen(int column, int rows, ColumnType from, ColumnType to) {
+        for (int row = 0; row < rows; row++) {
+            if (to.widen(getLong(column, row), from) == ColumnType.INVALID) {
+                return false;
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            setLong(column, row, to.widen(getLong(column, row), from));
+        }
+        types[column] = to;
+        return true;
+    }
+
+    private void encode(int column, int rows) {
+        Set<String> distinct = new HashSet<>();
+        for (int row = 0; row < rows; row++) {
+            if (distinct.add(getString(column, row)) && distinct.size() > MAXSAMPLEDISTINCT) {
+                return;
+            }
+        }
+        Dictionary dictionary = new Dictionary();
+        convertToCodes(column, rows, dictionary);
+        dictionaries[column] = dictionary;
+    }
+}
@@ -15,54 +15,89 @@
  */
 package uk.theretiredprogrammer.reportwriter.datasource;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.stream.Stream;
 
+// A record's fields, named by its schema. A record either holds its own
+// values, or (as a StoredDataSet row) reads them from the dataset's columns.
+//
+// As when records were maps of header to value, a header which occurs more
+// than once names its last field, and getAll returns one value per distinct
+// header.
 public class DataRecord {
 
-    public static final DataRecord EMPTY = new DataRecord();
+    public static final DataRecord EMPTY = new DataRecord(List.of(), List.of());
 
-    private LinkedHashMap<String, String> datarecord = new LinkedHashMap<>();
-
-    private DataRecord() {
-    }
+    private final Schema schema;
+    private final String[] values;
 
     public DataRecord(List<String> headers, Stream<String> fields) {
-        Iterator<String> fieldI = fields.iterator();
-        Iterator<String> headerI = headers.iterator();
-        createDataRecord(headerI, fieldI);
+        this(new Schema(headers), fields.toList());
     }
 
     public DataRecord(List<String> headers, List<String> fields) {
-        Iterator<String> fieldI = fields.iterator();
-        Iterator<String> headerI = headers.iterator();
-        createDataRecord(headerI, fieldI);
+        this(new Schema(headers), fields);
+    }
+
+    public DataRecord(Schema schema, List<String> fields) {
+        checkFieldCount(schema.size(), fields.size());
+        this.schema = schema;
+        this.values = fields.toArray(new String[0]);
+    }
+
+    // for a record whose values array is refilled by its owner (no copy is made)
+    DataRecord(Schema schema, String[] values) {
+        this.schema = schema;
+        this.values = values;
+    }
+
+    // for a record whose values are held elsewhere
+    DataRecord(Schema schema) {
+        this.schema = schema;
+        this.values = null;
     }
 
-    private void createDataRecord(Iterator<String> headerI, Iterator<String> fieldI) {
-        while (headerI.hasNext()) {
-            if (!fieldI.hasNext()) {
-                throw new RuntimeException("Data Record: number of headers greater than number of fields");
-            }
-            datarecord.put(headerI.next(), fieldI.next());
+    static void checkFieldCount(int headercount, int fieldcount) {
+        if (headercount > fieldcount) {
+            throw new RuntimeException("Data Record: number of headers greater than number of fields");
         }
-        if (fieldI.hasNext()) {
+        if (headercount < fieldcount) {
             throw new RuntimeException("Data Record: number of headers less than number of fields");
         }
     }
 
+    public Schema getSchema() {
+        return schema;
+    }
+
+    // column is as given by the schema
+    public String getField(int column) {
+        return values[column];
+    }
+
+    // orders this record's value of a column against another's, where both
+    // records have the same schema
+    int compareField(int column, DataRecord other) {
+        return getField(column).compareTo(other.getField(column));
+    }
+
     public String get(String name) {
-        String value = datarecord.get(name);
+        int column = schema.getColumn(name);
+        String value = column < 0 ? null : getField(column);
         if (value != null) {
             return value;
         }
         throw new RuntimeException("DataRecord::get: missing value - name was " + name);
     }
-    
+
     public Collection<String> getAll() {
-        return datarecord.values();
+        int[] columns = schema.getDistinctColumns();
+        List<String> all = new ArrayList<>(columns.length);
+        for (int column : columns) {
+            all.add(getField(column));
+        }
+        return all;
     }
 }
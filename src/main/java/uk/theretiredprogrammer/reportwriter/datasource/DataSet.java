@@ -20,22 +20,31 @@ import java.util.stream.Stream;
 
 public abstract class DataSet {
     
-    private final List<String> headers;
+    private final Schema schema;
     
     public DataSet(List<String> headers) {
-        this.headers = headers;
+        this.schema = new Schema(headers);
     }
     
     public DataSet(Stream<String> headers) {
-        this.headers = headers.toList();
+        this.schema = new Schema(headers.toList());
+    }
+
+    // datasets derived from another share its schema
+    public DataSet(Schema schema) {
+        this.schema = schema;
+    }
+
+    public Schema getSchema() {
+        return schema;
     }
     
     public List<String> getHeaders() {
-        return headers;
+        return schema.getHeaders();
     }
     
     public Stream<String> getHeaderStream() {
-        return headers.stream();
+        return getHeaders().stream();
     }
     
 }
@@ -16,16 +16,33 @@
 package uk.theretiredprogrammer.reportwriter.datasource;
 
 import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
-import java.nio.file.Files;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
@@ -33,20 +50,76 @@ import uk.theretiredprogrammer.reportwriter.language.StringExpression;
 public class DataSetFromCSV {
 
     public static StoredDataSet create(String name, ExpressionMap parameters) {
-        return new DataSetFromCSV().load(name, parameters);
+        return create(name, parameters, null, null);
     }
 
+    // only the named fields (all fields if null) of the records which pass the
+    // filter (all records if null) are loaded into the dataset
+    public static StoredDataSet create(String name, ExpressionMap parameters, Set<String> fields, BooleanExpression filter) {
+        return new DataSetFromCSV(fields, filter).load(name, parameters);
+    }
+
+    private final Set<String> loadfields;
+    private final BooleanExpression loadfilter;
+    private List<String> csvheaders;
+    private boolean[] keepcolumns;
     private StoredDataSet dataset;
+    private DataSetSnapshot snapshot;
+    private String appendingentry; // set while expecting the header record of an appended zip entry
+    private Charset charset;
+    private boolean offheap;
+
+    private DataSetFromCSV(Set<String> loadfields, BooleanExpression loadfilter) {
+        this.loadfields = loadfields;
+        this.loadfilter = loadfilter;
+    }
 
     private StoredDataSet load(String name, ExpressionMap parameters) {
         try {
             File f = getInputFile(parameters);
-            if (Configuration.getDefault().getArgConfiguration().isListCmd()) {
-                System.out.println("loading " + name + " from " + f.getCanonicalPath());
+            String entry = getOptionalString(parameters, "entry", null);
+            offheap = isOffHeap(parameters, f);
+            charset = getCharset(parameters);
+            snapshot = DataSetSnapshot.create(f, entry, charset);
+            if (snapshot != null) {
+                dataset = snapshot.load(loadfields, offheap);
+                if (dataset != null) {
+                    listLoading(name, "snapshot of " + f.getCanonicalPath());
+                    return select(dataset);
+                }
             }
-            try ( Reader rdr = new FileReader(f);  BufferedReader brdr = new BufferedReader(rdr)) {
-                charsource = new CharacterSource(brdr.lines().toList());
-                createDataSourceRecords(charsource);
+            listLoading(name, f.getCanonicalPath());
+            Compression compression = getCompression(f);
+            if (compression == Compression.ZIP) {
+                // a compressed file can only be streamed, whatever the ingest parameter
+                createDataSourceRecordsFromZipFile(f, entry);
+            } else if (entry != null) {
+                throw new RPTWTRRuntimeException("\"entry\" parameter in data statement is only allowed for a zip file", parameters);
+            } else if (compression == Compression.GZIP) {
+                createDataSourceRecordsFromGzipFile(f);
+            } else {
+                String ingest = getOptionalString(parameters, "ingest", "stream");
+                switch (ingest) {
+                    case "stream" ->
+                        createDataSourceRecordsFromStreamedFile(f);
+                    case "mapped", "parallel" -> {
+                        // a file which cannot be parsed as bytes is streamed instead
+                        int bomlength = readByteOrderMark(f);
+                        if (bomlength < 0 || !isAsciiCompatible(charset)) {
+                            createDataSourceRecordsFromStreamedFile(f);
+                        } else if (ingest.equals("mapped")) {
+                            createDataSourceRecordsFromMappedFile(f, bomlength);
+                        } else {
+                            createDataSourceRecordsInParallel(f, bomlength);
+                        }
+                    }
+                    default ->
+                        throw new RPTWTRRuntimeException("illegal parameter value for \"ingest\" parameter in data statement", parameters);
+                }
+            }
+            if (snapshot != null && dataset != null) {
+                snapshot.write(dataset);
+                dataset = select(dataset);
             }
             return dataset;
         } catch (IOException t) {
@@ -54,6 +127,15 @@ public class DataSetFromCSV {
         }
     }
 
+    private void listLoading(String name, String from) {
+        if (Configuration.getDefault().getArgConfiguration().isListCmd()) {
+            System.out.println("loading " + name + " from " + from);
+            if (loadfilter != null) {
+                System.out.println("filtering " + name + " while loading");
+            }
+        }
+    }
+
     private File getInputFile(ExpressionMap parameters) throws IOException {
         File f;
         switch (getRequiredString(parameters, "match")) {
@@ -66,8 +148,10 @@ public class DataSetFromCSV {
             }
             case "latest_startswith" -> {
                 String startswith = getRequiredString(parameters, "path");
-                String[] files = Configuration.getDefault().getDownloadDir().list((file, filename) -> filename.startsWith(startswith));
-                f = getResolvedLatestFile(files);
+                f = DirectoryIndex.get(Configuration.getDefault().getDownloadDir()).getLatestStartingWith(startswith);
+                if (f == null) {
+                    throw new RPTWTRRuntimeException("no file in the download directory starts with \"" + startswith + "\"", parameters);
+                }
             }
             default ->
                 throw new RPTWTRRuntimeException("illegal parameter value for \"match\" parameter in data statement", parameters);
@@ -75,23 +159,6 @@ public class DataSetFromCSV {
         return f.isAbsolute() ? f : new File(Configuration.getDefault().getDownloadDir(), f.getPath());
     }
 
-    private File getResolvedLatestFile(String[] files) throws IOException {
-        long mostrecenttime = 0;
-        File mostrecentfile = null;
-        for (String file : files) {
-            File f = new File(file);
-            if (!f.isAbsolute()) {
-                f = new File(Configuration.getDefault().getDownloadDir(), f.getPath());
-            }
-            long time = Files.getLastModifiedTime(f.toPath()).to(TimeUnit.SECONDS);
-            if (time > mostrecenttime) {
-                mostrecenttime = time;
-                mostrecentfile = f;
-            }
-        }
-        return mostrecentfile;
-    }
-
     private String getRequiredString(ExpressionMap parameters, String key) {
         StringExpression keyparameter = DataTypes.isStringExpression(parameters, key);
         if (keyparameter != null) {
@@ -100,35 +167,387 @@ public class DataSetFromCSV {
         throw new RPTWTRRuntimeException(key + " parameter missing in data statement", parameters);
     }
 
+    private String getOptionalString(ExpressionMap parameters, String key, String defaultvalue) {
+        StringExpression keyparameter = DataTypes.isStringExpression(parameters, key);
+        return keyparameter == null ? defaultvalue : keyparameter.evaluate(DataRecord.EMPTY);
+    }
+
+    // unless the data statement says where it is to be held, a dataset loaded
+    // from a file of at least this size (compressed or not) is held off the heap
+    private static final long OFFHEAPTHRESHOLD = 1L << 30;
+
+    private boolean isOffHeap(ExpressionMap parameters, File f) {
+        return switch (getOptionalString(parameters, "storage", "auto")) {
+            case "auto" ->
+                f.length() >= OFFHEAPTHRESHOLD;
+            case "heap" ->
+                false;
+            case "offheap" ->
+                true;
+            default ->
+                throw new RPTWTRRuntimeException("illegal parameter value for \"storage\" parameter in data statement", parameters);
+        };
+    }
+
+    private Charset getCharset(ExpressionMap parameters) {
+        String charsetname = getOptionalString(parameters, "charset", null);
+        if (charsetname == null) {
+            return Charset.defaultCharset();
+        }
+        try {
+            return Charset.forName(charsetname);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException ex) {
+            throw new RPTWTRRuntimeException("illegal parameter value for \"charset\" parameter in data statement", parameters);
+        }
+    }
+
+    private static final String DELIMITERS = ",\"\r\n ";
+
+    // the byte parsers can be used for any charset which encodes the delimiters
+    // as ASCII, and never uses those bytes within another character
+    // (e.g. UTF-8, US-ASCII and ISO-8859-1)
+    private boolean isAsciiCompatible(Charset charset) {
+        return charset.canEncode() && Arrays.equals(DELIMITERS.getBytes(charset), DELIMITERS.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // a byte order mark at the start of the bytes overrides the charset; returns
+    // the length of a UTF-8 mark (which must be skipped), 0 if there is no mark,
+    // or -1 for a UTF-16 mark (which the UTF-16 decoder skips itself)
+    private int readByteOrderMark(byte[] bytes, int length) {
+        if (length >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF) {
+            charset = StandardCharsets.UTF_8;
+            return 3;
+        }
+        if (length >= 2 && ((bytes[0] == (byte) 0xFE && bytes[1] == (byte) 0xFF) || (bytes[0] == (byte) 0xFF && bytes[1] == (byte) 0xFE))) {
+            charset = StandardCharsets.UTF_16;
+            return -1;
+        }
+        return 0;
+    }
+
+    private int readByteOrderMark(File f) throws IOException {
+        try ( InputStream in = new FileInputStream(f)) {
+            byte[] bytes = new byte[3];
+            return readByteOrderMark(bytes, in.readNBytes(bytes, 0, bytes.length));
+        }
+    }
+
+    private void createDataSourceRecordsFromStreamedFile(File f) throws IOException {
+        try ( InputStream in = new FileInputStream(f)) {
+            createDataSourceRecords(in);
+        }
+    }
+
+    private static final int STREAMBUFFERSIZE = 1 << 16;
+
+    // ASCII compatible input is parsed as bytes, so only the fields which are
+    // kept are ever decoded; anything else is decoded to characters first
+    private void createDataSourceRecords(InputStream in) throws IOException {
+        byte[] bytes = new byte[STREAMBUFFERSIZE];
+        int length = in.readNBytes(bytes, 0, 3);
+        int bomlength = readByteOrderMark(bytes, length);
+        if (bomlength < 0 || !isAsciiCompatible(charset)) {
+            createDataSourceRecords(new InputStreamReader(new SequenceInputStream(new ByteArrayInputStream(bytes, 0, length), in), charset));
+            return;
+        }
+        System.arraycopy(bytes, bomlength, bytes, 0, length - bomlength);
+        length -= bomlength;
+        // the buffer is filled and parsed; any record left incomplete at its
+        // end is moved to the start and parsed again with the following bytes
+        CSVByteParser parser = new CSVByteParser(charset, this::getParsedColumns, this::processRecord);
+        boolean eof = false;
+        while (!eof) {
+            int count = in.readNBytes(bytes, length, bytes.length - length);
+            length += count;
+            eof = length < bytes.length;
+            int parsed = parser.parse(ByteBuffer.wrap(bytes), 0, length, eof);
+            System.arraycopy(bytes, parsed, bytes, 0, length - parsed);
+            length -= parsed;
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+        }
+    }
+
+    private enum Compression {
+        NONE, GZIP, ZIP
+    }
+
+    private static final int DECOMPRESSIONBUFFERSIZE = 1 << 16;
+
+    // recognised by the file extension, or failing that by the file's magic number
+    private Compression getCompression(File f) throws IOException {
+        String filename = f.getName().toLowerCase();
+        if (filename.endsWith(".gz")) {
+            return Compression.GZIP;
+        }
+        if (filename.endsWith(".zip")) {
+            return Compression.ZIP;
+        }
+        byte[] magic = new byte[4];
+        int length;
+        try ( InputStream in = new FileInputStream(f)) {
+            length = in.readNBytes(magic, 0, magic.length);
+        }
+        if (length >= 2 && magic[0] == (byte) 0x1F && magic[1] == (byte) 0x8B) {
+            return Compression.GZIP;
+        }
+        if (length == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+            return Compression.ZIP;
+        }
+        return Compression.NONE;
+    }
+
+    private void createDataSourceRecordsFromGzipFile(File f) throws IOException {
+        try ( InputStream in = new GZIPInputStream(new FileInputStream(f), DECOMPRESSIONBUFFERSIZE)) {
+            createDataSourceRecords(in);
+        }
+    }
+
+    // loads the named entry, or if entry is null appends all the .csv entries
+    // (which must have the same headers) in the order they are stored
+    private void createDataSourceRecordsFromZipFile(File f, String entry) throws IOException {
+        try ( ZipInputStream zip = new ZipInputStream(new BufferedInputStream(new FileInputStream(f), DECOMPRESSIONBUFFERSIZE))) {
+            boolean found = false;
+            ZipEntry zipentry;
+            while ((zipentry = zip.getNextEntry()) != null) {
+                if (entry == null
+                        ? !zipentry.isDirectory() && zipentry.getName().toLowerCase().endsWith(".csv")
+                        : zipentry.getName().equals(entry)) {
+                    found = true;
+                    appendingentry = dataset == null ? null : zipentry.getName();
+                    createDataSourceRecords(zip);
+                    if (entry != null) {
+                        return;
+                    }
+                }
+            }
+            if (!found) {
+                throw new RPTWTRRuntimeException(entry == null
+                        ? "zip file " + f.getCanonicalPath() + " contains no .csv entries"
+                        : "zip file " + f.getCanonicalPath() + " does not contain entry " + entry);
+            }
+        }
+    }
+
+    private static final long MAPPINGWINDOW = 1L << 30;
+
+    // the file is mapped in windows; any record left incomplete at the end of
+    // a window is parsed again at the start of the next one
+    private void createDataSourceRecordsFromMappedFile(File f, int bomlength) throws IOException {
+        try ( FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            createDataSourceRecordsFromMappedFile(channel, bomlength);
+        }
+    }
+
+    private void createDataSourceRecordsFromMappedFile(FileChannel channel, long position) throws IOException {
+        CSVByteParser parser = new CSVByteParser(charset, this::getParsedColumns, this::processRecord);
+        long size = channel.size();
+        while (position < size) {
+            int length = (int) Math.min(MAPPINGWINDOW, size - position);
+            boolean eof = position + length == size;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            int parsed = parser.parse(window, 0, length, eof);
+            if (parsed == 0 && !eof) {
+                throw new RPTWTRRuntimeException("CSV record too large to map");
+            }
+            position += parsed;
+        }
+    }
+
+    // the header is parsed first, then the remaining records are parsed in
+    // parallel byte ranges and inserted in their original order
+    private void createDataSourceRecordsInParallel(File f, int bomlength) throws IOException {
+        try ( FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == bomlength) {
+                return;
+            }
+            int length = (int) Math.min(MAPPINGWINDOW, size);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            int dataoffset = new CSVByteParser(charset, this::getParsedColumns, this::processRecord).parseRecord(window, bomlength, length, length == size);
+            if (dataoffset < 0) {
+                throw new RPTWTRRuntimeException("CSV record too large to map");
+            }
+            List<DataRecord> datarecords = new ParallelCSVParser<>(channel, charset, keepcolumns,
+                    fields -> filterDataRecord(createDataRecord(fields)))
+                    .parse(dataoffset);
+            if (datarecords == null) {
+                createDataSourceRecordsFromMappedFile(channel, dataoffset);
+            } else {
+                dataset.insertDataRecords(datarecords.stream());
+            }
+        }
+    }
+
     private CharacterSource charsource;
 
     private enum State {
         STARTOFFIELD, INQUOTEDFIELD, INUNQUOTEDFIELD, AFTERQUOTEDFIELD
     }
     private State state;
-    private List<String> tokenlist;
-    private StringBuilder token;
-    private boolean inData = false;
+    private final RecordBuffer record = new RecordBuffer();
+    private String[] recordvalues; // refilled from the record buffer for each data record
+    private DataRecord datarecord;
 
-    private void createDataSourceRecords(CharacterSource charsource) {
+    private void createDataSourceRecords(Reader rdr) {
+        charsource = new CharacterSource(rdr);
         state = State.STARTOFFIELD;
-        tokenlist = new ArrayList<>();
-        token = new StringBuilder();
-        do {
+        record.clear();
+        while (!charsource.isEOF()) {
             processNextChar(charsource);
-        } while (!charsource.isEOF());
+        }
     }
 
     private void processlineoftokens() {
-        if (inData) {
-            dataset.insertDataRecord(tokenlist.stream());
+        processRecord(record);
+        record.clear();
+        state = State.STARTOFFIELD;
+    }
+
+    // nothing is buffered for a skipped column, so it ends as an empty field
+    private void addToken() {
+        record.endField();
+    }
+
+    private void appendToken(char c) {
+        if (isParsedColumn(record.getFieldCount())) {
+            record.append(c);
+        }
+    }
+
+    private RecordBuffer getTokenBuffer() {
+        return isParsedColumn(record.getFieldCount()) ? record : null;
+    }
+
+    private boolean isParsedColumn(int column) {
+        boolean[] columns = getParsedColumns();
+        return columns == null || column >= columns.length || columns[column];
+    }
+
+    // the columns which the parsers need to decode (all if null)
+    private boolean[] getParsedColumns() {
+        return appendingentry == null ? keepcolumns : null;
+    }
+
+    // only the kept columns of a data record are copied out of the buffer, into
+    // a data record which is reused for every record, as the dataset copies its
+    // values; the headers and a record of the wrong length are handled from a
+    // list of the fields, as for the byte parsers
+    private void processRecord(RecordBuffer record) {
+        if (appendingentry != null) {
+            checkAppendedHeaders(record);
+            appendingentry = null;
+            return;
+        }
+        if (dataset == null || record.getFieldCount() != csvheaders.size()) {
+            processRecord(record.getFields());
+            return;
+        }
+        if (datarecord == null || datarecord.getSchema() != dataset.getSchema()) {
+            recordvalues = new String[dataset.getSchema().size()];
+            datarecord = new DataRecord(dataset.getSchema(), recordvalues);
+        }
+        record.getFields(keepcolumns, recordvalues);
+        insertDataRecord(datarecord);
+    }
+
+    private void checkAppendedHeaders(RecordBuffer record) {
+        boolean same = record.getFieldCount() == csvheaders.size();
+        for (int i = 0; same && i < csvheaders.size(); i++) {
+            same = csvheaders.get(i).contentEquals(record.getField(i));
+        }
+        if (!same) {
+            throw new RPTWTRRuntimeException("zip entry " + appendingentry + " has different headers to the preceding entries");
+        }
+    }
+
+    private void processRecord(List<String> fields) {
+        if (appendingentry != null) {
+            if (!fields.equals(csvheaders)) {
+                throw new RPTWTRRuntimeException("zip entry " + appendingentry + " has different headers to the preceding entries");
+            }
+            appendingentry = null;
+            return;
+        }
+        if (dataset == null) {
+            createDataSet(fields);
         } else {
-            dataset = new StoredDataSet(tokenlist);
-            inData = true;
+            insertDataRecord(createDataRecord(fields));
+        }
+    }
+
+    private void insertDataRecord(DataRecord datarecord) {
+        if (filterDataRecord(datarecord) != null) {
+            dataset.insertDataRecord(datarecord);
         }
-        tokenlist = new ArrayList<>();
-        state = State.STARTOFFIELD;
-        token = new StringBuilder();
+    }
+
+    // returns null if the record is rejected by the load filter (which is
+    // applied once a snapshot has been written)
+    private DataRecord filterDataRecord(DataRecord datarecord) {
+        return loadfilter == null || snapshot != null || loadfilter.evaluate(datarecord) ? datarecord : null;
+    }
+
+    // the headers may be in a parser's reused list, so are copied; a snapshot
+    // is written from every column, so the dataset is projected once it has
+    // been written
+    private void createDataSet(List<String> headers) {
+        csvheaders = List.copyOf(headers);
+        if (snapshot != null || loadfields == null || loadfields.containsAll(headers)) {
+            dataset = new StoredDataSet(new Schema(csvheaders), offheap);
+            return;
+        }
+        keepcolumns = new boolean[headers.size()];
+        List<String> keptheaders = new ArrayList<>();
+        for (int i = 0; i < headers.size(); i++) {
+            if (loadfields.contains(headers.get(i))) {
+                keepcolumns[i] = true;
+                keptheaders.add(headers.get(i));
+            }
+        }
+        dataset = new StoredDataSet(new Schema(keptheaders), offheap);
+    }
+
+    // the load's fields of the records which pass its filter, from a dataset
+    // of every column or (from a snapshot) just the load's fields
+    private StoredDataSet select(StoredDataSet source) {
+        List<String> headers = source.getHeaders();
+        int[] columns = IntStream.range(0, headers.size())
+                .filter(column -> loadfields == null || loadfields.contains(headers.get(column)))
+                .toArray();
+        if (columns.length == headers.size() && loadfilter == null) {
+            return source;
+        }
+        Schema schema = new Schema(Arrays.stream(columns).mapToObj(headers::get).toList());
+        StoredDataSet selected = new StoredDataSet(schema, offheap);
+        String[] values = new String[columns.length];
+        DataRecord selectedrecord = new DataRecord(schema, values);
+        DataSetStream records = loadfilter == null ? source.createDataRecordCursor() : source.createDataRecordCursor(loadfilter);
+        records.getStream().forEach(record -> {
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = record.getField(columns[i]);
+            }
+            selected.insertDataRecord(selectedrecord);
+        });
+        return selected;
+    }
+
+    private DataRecord createDataRecord(List<String> fields) {
+        if (keepcolumns == null) {
+            return new DataRecord(dataset.getSchema(), fields);
+        }
+        if (fields.size() != keepcolumns.length) {
+            // a record of the wrong length fails here, as it would unprojected
+            return new DataRecord(csvheaders, fields);
+        }
+        List<String> keptfields = new ArrayList<>(dataset.getHeaders().size());
+        for (int i = 0; i < keepcolumns.length; i++) {
+            if (keepcolumns[i]) {
+                keptfields.add(fields.get(i));
+            }
+        }
+        return new DataRecord(dataset.getSchema(), keptfields);
     }
 
     private void processNextChar(CharacterSource charsource) {
@@ -137,19 +556,18 @@ public class DataSetFromCSV {
             case STARTOFFIELD -> {
                 switch (c) {
                     case '\n' -> {
-                        tokenlist.add(token.toString());
+                        addToken();
                         processlineoftokens();
                     }
-                    case ',' -> {
-                        tokenlist.add(token.toString());
-                        token = new StringBuilder();
-                    }
+                    case ',' ->
+                        addToken();
                     case ' ' -> {
                     }
                     case '"' ->
                         state = State.INQUOTEDFIELD;
                     default -> {
-                        token.append(c);
+                        appendToken(c);
+                        charsource.appendRun(getTokenBuffer(), ',');
                         state = State.INUNQUOTEDFIELD;
                     }
                 }
@@ -157,35 +575,38 @@ public class DataSetFromCSV {
             case INQUOTEDFIELD -> {
                 switch (c) {
                     case '\n' ->
-                        token.append('\n'); // insert as field content
+                        appendToken('\n'); // insert as field content
                     case '"' -> {
                         if (charsource.peekChar() == '"') {
-                            token.append(c);
+                            appendToken(c);
                             charsource.getChar();
+                            charsource.appendRun(getTokenBuffer(), '"');
                         } else {
-                            tokenlist.add(token.toString());
-                            token = new StringBuilder();
+                            addToken();
                             state = State.AFTERQUOTEDFIELD;
                         }
                     }
-                    default ->
-                        token.append(c);
+                    default -> {
+                        appendToken(c);
+                        charsource.appendRun(getTokenBuffer(), '"');
+                    }
                 }
             }
 
             case INUNQUOTEDFIELD -> {
                 switch (c) {
                     case '\n' -> {
-                        tokenlist.add(token.toString());
+                        addToken();
                         processlineoftokens();
                     }
                     case ',' -> {
                         state = State.STARTOFFIELD;
-                        tokenlist.add(token.toString());
-                        token = new StringBuilder();
+                        addToken();
+                    }
+                    default -> {
+                        appendToken(c);
+                        charsource.appendRun(getTokenBuffer(), ',');
                     }
-                    default ->
-                        token.append(c);
                 }
             }
 
@@ -205,51 +626,113 @@ public class DataSetFromCSV {
         }
     }
 
+    // reads the file in fixed size chunks, so only the current chunk (and the
+    // current line, for error reporting) is held in memory while loading
     private class CharacterSource {
 
-        private final List<String> lines;
-        private int linesindex;
+        private static final int CHUNKSIZE = 65536;
+
+        private final Reader rdr;
+        private final char[] chunk = new char[CHUNKSIZE];
+        private int chunklength = 0;
+        private int characteroffset = 0;
 
-        private char[] currentline;
-        private int characteroffset;
+        private int linestart = 0;
+        private final StringBuilder linecarriedover = new StringBuilder();
+        private char lastchar = '\n';
 
-        private boolean atEOF = false;
+        private boolean atEOF;
 
-        public CharacterSource(List<String> lines) {
-            this.lines = lines;
-            this.linesindex = 0;
-            getnextline();
+        public CharacterSource(Reader rdr) {
+            this.rdr = rdr;
+            atEOF = !getnextchunk();
         }
 
-        private void getnextline() {
-            if (linesindex < lines.size()) {
-                currentline = lines.get(linesindex++).toCharArray();
-                characteroffset = 0;
-            } else {
-                atEOF = true;
+        private boolean getnextchunk() {
+            linecarriedover.append(chunk, linestart, chunklength - linestart);
+            linestart = 0;
+            characteroffset = 0;
+            try {
+                do {
+                    chunklength = rdr.read(chunk, 0, CHUNKSIZE);
+                } while (chunklength == 0);
+            } catch (IOException ex) {
+                throw new RPTWTRRuntimeException(ex);
+            }
+            if (chunklength < 0) {
+                chunklength = 0;
+                return false;
             }
+            return true;
         }
 
+        private boolean isChunkEmpty() {
+            return characteroffset >= chunklength && !getnextchunk();
+        }
+
+        // line endings (\n, \r\n or \r) are all returned as \n, and a final line
+        // without a line ending is treated as if it had one
         public char getChar() {
-            if (characteroffset < currentline.length) {
-                return currentline[characteroffset++];
+            if (isChunkEmpty()) {
+                atEOF = true;
+                return '\n';
+            }
+            char c = chunk[characteroffset++];
+            if (c == '\r') {
+                if (!isChunkEmpty() && chunk[characteroffset] == '\n') {
+                    characteroffset++;
+                }
+                c = '\n';
+            }
+            if (c == '\n') {
+                linecarriedover.setLength(0);
+                linestart = characteroffset;
+            }
+            lastchar = c;
+            return c;
+        }
+
+        // appends the run of characters in the current chunk up to the next
+        // delimiter or line ending to the token in one copy (or just skips the
+        // run if token is null)
+        public void appendRun(RecordBuffer token, char delimiter) {
+            int runend = characteroffset;
+            while (runend < chunklength) {
+                char c = chunk[runend];
+                if (c == delimiter || c == '\n' || c == '\r') {
+                    break;
+                }
+                runend++;
+            }
+            if (runend > characteroffset) {
+                if (token != null) {
+                    token.append(chunk, characteroffset, runend - characteroffset);
+                }
+                lastchar = chunk[runend - 1];
+                characteroffset = runend;
             }
-            getnextline();
-            return '\n';
         }
 
         public char peekChar() {
-            if (characteroffset < currentline.length) {
-                return currentline[characteroffset];
+            if (isChunkEmpty()) {
+                return '\n';
             }
-            return '\n';
+            char c = chunk[characteroffset];
+            return c == '\r' ? '\n' : c;
         }
 
         public String getCurrentLine() {
-            return lines.get(linesindex - 1);
+            int lineend = linestart;
+            while (lineend < chunklength && chunk[lineend] != '\n' && chunk[lineend] != '\r') {
+                lineend++;
+            }
+            return linecarriedover.toString() + new String(chunk, linestart, lineend - linestart);
         }
 
         public boolean isEOF() {
+            if (!atEOF && lastchar == '\n' && isChunkEmpty()) {
+                atEOF = true;
+            }
             return atEOF;
         }
     }
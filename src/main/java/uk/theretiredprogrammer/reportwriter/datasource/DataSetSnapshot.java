@@ -0,0 +1,368 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
+
+// A binary image of the columns of a dataset loaded from a CSV file, kept in
+// the cache directory and keyed by the file's canonical path (plus the zip
+// entry, if one is selected, and the charset the file is decoded with), size
+// and modification time. A byte order mark is part of the file, so is covered
+// by its size and modification time.
+//
+// Each column is held as the dataset holds it - its type and values as longs,
+// its dictionary and codes, or its strings - together with its zone map, so
+// loading the snapshot reads the values straight into the dataset's columns
+// without parsing, type inference or encoding. Only the columns wanted are
+// read.
+//
+// Format: magic, key, source size, source modified time, header count and
+// headers, row count, then an entry for each column, then the file offset of
+// each column's entry and an int -1. A column's entry is the number of its
+// type, its dictionary size (-1 if it has none) and values, its rows (a long
+// or an int code each, for a typed or dictionary encoded column, otherwise a
+// string), and its zone map - the block count, then for each block the count
+// of its distinct values (-1 if there is no zone, MAXDISTINCT + 1 if there are
+// more), least and greatest values and the distinct values. A string is a
+// varint of its UTF-8 byte length plus one (0 for null) and the UTF-8 bytes.
+// The file is read through memory mapped windows.
+class DataSetSnapshot {
+
+    private static final byte[] MAGIC = "RPTWTRS2".getBytes(StandardCharsets.US_ASCII);
+    private static final int ENDOFSNAPSHOT = -1;
+    private static final int NOZONE = -1;
+    private static final long MAPPINGWINDOW = 1L << 30;
+
+    // returns null if no cache directory is configured
+    static DataSetSnapshot create(File source, String entry, Charset charset) throws IOException {
+        File cachedir = Configuration.getDefault().getCacheDir();
+        if (cachedir == null) {
+            return null;
+        }
+        String key = (entry == null ? source.getCanonicalPath() : source.getCanonicalPath() + "!" + entry) + "?" + charset.name();
+        return new DataSetSnapshot(key, Files.size(source.toPath()), Files.getLastModifiedTime(source.toPath()).toMillis(),
+                new File(cachedir, UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ".snapshot").toPath());
+    }
+
+    private final String key;
+    private final long sourcesize;
+    private final long sourcemodified;
+    private final Path snapshotpath;
+
+    private DataSetSnapshot(String key, long sourcesize, long sourcemodified, Path snapshotpath) {
+        this.key = key;
+        this.sourcesize = sourcesize;
+        this.sourcemodified = sourcemodified;
+        this.snapshotpath = snapshotpath;
+    }
+
+    // the dataset of the snapshot's columns named by fields (all if null), or
+    // null if there is no usable snapshot for the source
+    StoredDataSet load(Set<String> fields, boolean offheap) {
+        if (!Files.isReadable(snapshotpath)) {
+            return null;
+        }
+        try ( FileChannel channel = FileChannel.open(snapshotpath, StandardOpenOption.READ)) {
+            SnapshotInput in = new SnapshotInput(channel);
+            if (!readHeader(in)) {
+                return null;
+            }
+            int columncount = in.readInt();
+            List<String> headers = new ArrayList<>();
+            for (int column = 0; column < columncount; column++) {
+                headers.add(in.readString());
+            }
+            int rowcount = in.readInt();
+            long offsets = channel.size() - Integer.BYTES - (long) columncount * Long.BYTES;
+            in.seek(offsets + (long) columncount * Long.BYTES);
+            if (in.readInt() != ENDOFSNAPSHOT) {
+                return null;
+            }
+            List<String> keptheaders = new ArrayList<>();
+            List<Long> keptoffsets = new ArrayList<>();
+            for (int column = 0; column < columncount; column++) {
+                if (fields == null || fields.contains(headers.get(column))) {
+                    keptheaders.add(headers.get(column));
+                    in.seek(offsets + (long) column * Long.BYTES);
+                    keptoffsets.add(in.readLong());
+                }
+            }
+            Columns columns = offheap ? new OffHeapColumns(keptheaders.size()) : new HeapColumns(keptheaders.size());
+            columns.ensureCapacity(rowcount);
+            for (int column = 0; column < keptheaders.size(); column++) {
+                in.seek(keptoffsets.get(column));
+                readColumn(in, columns, column, rowcount);
+            }
+            return new StoredDataSet(new Schema(keptheaders), offheap, columns, rowcount);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private boolean readHeader(SnapshotInput in) {
+        byte[] magic = new byte[MAGIC.length];
+        for (int i = 0; i < magic.length; i++) {
+            magic[i] = in.readByte();
+        }
+        return Arrays.equals(magic, MAGIC) && key.equals(in.readString())
+                && in.readLong() == sourcesize && in.readLong() == sourcemodified;
+    }
+
+    private void readColumn(SnapshotInput in, Columns columns, int column, int rowcount) {
+        ColumnType type = ColumnType.ofNumber(in.readInt());
+        if (type == null) {
+            throw new IllegalStateException("unknown column type in snapshot");
+        }
+        int dictionarysize = in.readInt();
+        Dictionary dictionary = null;
+        if (dictionarysize >= 0) {
+            dictionary = new Dictionary();
+            for (int code = 0; code < dictionarysize; code++) {
+                dictionary.getCode(in.readString());
+            }
+        }
+        columns.startColumn(column, rowcount, type, dictionary);
+        for (int row = 0; row < rowcount; row++) {
+            if (type != ColumnType.STRING) {
+                columns.setLong(column, row, in.readLong());
+            } else if (dictionary != null) {
+                columns.setCode(column, row, in.readInt());
+            } else {
+                columns.setString(column, row, in.readString());
+            }
+        }
+        ZoneMap zonemap = columns.getZoneMap();
+        int blockcount = in.readInt();
+        for (int block = 0; block < blockcount; block++) {
+            int distinctcount = in.readInt();
+            if (distinctcount == NOZONE) {
+                zonemap.setZone(column, block, null);
+            } else {
+                String min = in.readString();
+                String max = in.readString();
+                String[] distinct = null;
+                if (distinctcount <= ZoneMap.MAXDISTINCT) {
+                    distinct = new String[distinctcount];
+                    for (int i = 0; i < distinctcount; i++) {
+                        distinct[i] = in.readString();
+                    }
+                }
+                zonemap.setZone(column, block, new ZoneMap.Zone(min, max, distinct));
+            }
+        }
+    }
+
+    // writing is best effort - any failure just leaves no snapshot
+    void write(StoredDataSet dataset) {
+        Path temppath = null;
+        try {
+            temppath = Files.createTempFile(snapshotpath.getParent(), "snapshot", ".tmp");
+            try ( FileOutputStream file = new FileOutputStream(temppath.toFile());  DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                out.write(MAGIC);
+                writeString(out, key);
+                out.writeLong(sourcesize);
+                out.writeLong(sourcemodified);
+                List<String> headers = dataset.getHeaders();
+                out.writeInt(headers.size());
+                for (String header : headers) {
+                    writeString(out, header);
+                }
+                out.writeInt(dataset.size());
+                long[] offsets = new long[headers.size()];
+                for (int column = 0; column < headers.size(); column++) {
+                    out.flush();
+                    offsets[column] = file.getChannel().position();
+                    writeColumn(out, dataset.getColumns(), column, dataset.size());
+                }
+                for (long offset : offsets) {
+                    out.writeLong(offset);
+                }
+                out.writeInt(ENDOFSNAPSHOT);
+            }
+            Files.move(temppath, snapshotpath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            try {
+                if (temppath != null) {
+                    Files.deleteIfExists(temppath);
+                }
+            } catch (IOException ex2) {
+                // nothing more can be done - the temporary file is left behind
+            }
+        }
+    }
+
+    private void writeColumn(DataOutputStream out, Columns columns, int column, int rowcount) throws IOException {
+        ColumnType type = columns.getType(column);
+        Dictionary dictionary = columns.getDictionary(column);
+        out.writeInt(type.getNumber());
+        out.writeInt(dictionary == null ? -1 : dictionary.size());
+        if (dictionary != null) {
+            for (int code = 0; code < dictionary.size(); code++) {
+                writeString(out, dictionary.getValue(code));
+            }
+        }
+        for (int row = 0; row < rowcount; row++) {
+            if (type != ColumnType.STRING) {
+                out.writeLong(columns.getLong(column, row));
+            } else if (dictionary != null) {
+                out.writeInt(columns.getCode(column, row));
+            } else {
+                writeString(out, columns.getString(column, row));
+            }
+        }
+        ZoneMap zonemap = columns.getZoneMap();
+        out.writeInt(zonemap.getBlockCount());
+        for (int block = 0; block < zonemap.getBlockCount(); block++) {
+            ZoneMap.Zone zone = zonemap.getZone(column, block);
+            if (zone == null) {
+                out.writeInt(NOZONE);
+            } else {
+                String[] distinct = zone.getDistinct();
+                out.writeInt(distinct == null ? ZoneMap.MAXDISTINCT + 1 : distinct.length);
+                writeString(out, zone.getMin());
+                writeString(out, zone.getMax());
+                if (distinct != null) {
+                    for (String value : distinct) {
+                        writeString(out, value);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // reads the snapshot through a window mapped at the read position, which
+    // is moved on whenever a value would run past its end
+    private static class SnapshotInput {
+
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowstart;
+        private int offset;
+        private byte[] bytes = new byte[256];
+
+        SnapshotInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            size = channel.size();
+            seek(0);
+        }
+
+        final void seek(long position) {
+            if (window != null && position >= windowstart && position < windowstart + window.limit()) {
+                offset = (int) (position - windowstart);
+                return;
+            }
+            if (position < 0 || position > size) {
+                throw new IndexOutOfBoundsException("outside the snapshot");
+            }
+            try {
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPINGWINDOW, size - position));
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            windowstart = position;
+            offset = 0;
+        }
+
+        private void need(int length) {
+            if (offset + length > window.limit()) {
+                window = null;
+                seek(windowstart + offset);
+            }
+        }
+
+        byte readByte() {
+            need(1);
+            return window.get(offset++);
+        }
+
+        int readInt() {
+            need(Integer.BYTES);
+            int value = window.getInt(offset);
+            offset += Integer.BYTES;
+            return value;
+        }
+
+        long readLong() {
+            need(Long.BYTES);
+            long value = window.getLong(offset);
+            offset += Long.BYTES;
+            return value;
+        }
+
+        int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = readByte();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        String readString() {
+            int length = readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            need(length);
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            window.get(offset, bytes, 0, length);
+            offset += length;
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -22,14 +22,22 @@ import java.util.stream.Stream;
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+import uk.theretiredprogrammer.reportwriter.language.functions.DataRecordField;
 
 public class DataSetStream extends DataSet {
 
     private Stream<DataRecord> stream;
+    // a dataset created from the stream is held off the heap if its source was
+    private boolean offheap = false;
 
     DataSetStream(StoredDataSet dataset) {
-        super(dataset.getHeaders());
-        this.stream = dataset.getStream();
+        this(dataset, dataset.getStream());
+    }
+
+    DataSetStream(StoredDataSet dataset, Stream<DataRecord> stream) {
+        super(dataset.getSchema());
+        this.stream = stream;
+        this.offheap = dataset.isOffHeap();
     }
 
     DataSetStream(List<String> headers, Stream<DataRecord> stream) {
@@ -42,16 +50,23 @@ public class DataSetStream extends DataSet {
         this.stream = Stream.empty();
     }
 
+    DataSetStream(Schema schema, Stream<DataRecord> stream) {
+        super(schema);
+        this.stream = stream;
+    }
+
     public StoredDataSet createStoredDataSet() {
-        return new StoredDataSet(getHeaders()).insertDataRecords(stream);
+        return StoredDataSet.create(getSchema(), offheap, stream);
     }
 
     public DataSetStream createDataSetStream(Stream<DataRecord> stream) {
-        return new DataSetStream(getHeaders(), stream);
+        DataSetStream datasetstream = new DataSetStream(getSchema(), stream);
+        datasetstream.offheap = offheap;
+        return datasetstream;
     }
     
     public DataSetStream createDataSetStreamIncludeHeader(Stream<DataRecord> stream) {
-        return new DataSetStream(getHeaders(), Stream.concat(getHeaderAsDataRecord(), stream));
+        return new DataSetStream(getSchema(), Stream.concat(getHeaderAsDataRecord(), stream));
     }
 
     Stream<DataRecord> getStream() {
@@ -60,6 +75,7 @@ public class DataSetStream extends DataSet {
 
     public Stream<DataRecord> filter(BooleanExpression filterexpression) {
         try {
+            DataRecordField.bind(filterexpression, getSchema());
             return this.stream.filter(dr -> filterexpression.evaluate(dr));
         } catch (Throwable t) {
             throw new RuntimeException(t);
@@ -71,19 +87,39 @@ public class DataSetStream extends DataSet {
             List<String> sortfieldnames = sortfields.stream()
                     .map(operand -> DataTypes.isStringExpression(operand).evaluate(DataRecord.EMPTY))
                     .collect(Collectors.toList());
-            return this.stream.sorted((dr1, dr2) -> sortfieldnames.stream()
-                    .map(fn -> dr1.get(fn).compareTo(dr2.get(fn)))
-                    .filter(cmp -> cmp != 0).findFirst().orElse(0));
+            int[] sortcolumns = sortfieldnames.stream().mapToInt(getSchema()::getColumn).toArray();
+            return this.stream.sorted((dr1, dr2) -> {
+                for (int i = 0; i < sortcolumns.length; i++) {
+                    int cmp = compareSortFields(dr1, dr2, sortfieldnames.get(i), sortcolumns[i]);
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                }
+                return 0;
+            });
         } catch (Throwable t) {
             throw new RuntimeException(t);
         }
     }
 
+    // records of the stream's schema compare by column, and so by the column's
+    // type where they are rows of the same stored dataset
+    private int compareSortFields(DataRecord dr1, DataRecord dr2, String name, int column) {
+        if (column >= 0 && dr1.getSchema() == getSchema() && dr2.getSchema() == getSchema()) {
+            return dr1.compareField(column, dr2);
+        }
+        return getSortField(dr1, name, column).compareTo(getSortField(dr2, name, column));
+    }
+
+    private String getSortField(DataRecord datarecord, String name, int column) {
+        return column >= 0 && datarecord.getSchema() == getSchema() ? datarecord.getField(column) : datarecord.get(name);
+    }
+
     public Stream<DataRecord> buildNewDataRecordStream(ExpressionList fields) {
         try {
             return this.stream.map(datarecord -> new DataRecord(
-                    this.getHeaders(),
-                    fields.stream().map(operand -> DataTypes.isStringExpression(operand).evaluate(datarecord))
+                    this.getSchema(),
+                    fields.stream().map(operand -> DataTypes.isStringExpression(operand).evaluate(datarecord)).toList()
             )
             );
         } catch (Throwable t) {
@@ -91,6 +127,26 @@ public class DataSetStream extends DataSet {
         }
     }
 
+    // as buildNewDataRecordStream, but every evaluated record is the same one,
+    // refilled for each record of the stream - for use in a cursor pipeline
+    public Stream<DataRecord> buildNewDataRecordCursor(ExpressionList fields) {
+        if (fields.size() != getSchema().size()) {
+            return buildNewDataRecordStream(fields);
+        }
+        try {
+            String[] values = new String[fields.size()];
+            DataRecord cursor = new DataRecord(getSchema(), values);
+            return this.stream.map(datarecord -> {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = DataTypes.isStringExpression(fields.get(i)).evaluate(datarecord);
+                }
+                return cursor;
+            });
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
     public void forEachOrdered(Consumer<DataRecord> action) {
         try {
             this.stream.forEachOrdered(dr -> action.accept(dr));
@@ -100,6 +156,6 @@ public class DataSetStream extends DataSet {
     }
 
     private Stream<DataRecord> getHeaderAsDataRecord() {
-        return Stream.of(new DataRecord(getHeaders(), getHeaders()));
+        return Stream.of(new DataRecord(getSchema(), getHeaders()));
     }
 }
@@ -19,7 +19,6 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
-import java.util.stream.Collectors;
 import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
 
 public class DataSetToCSV {
@@ -34,16 +33,26 @@ public class DataSetToCSV {
             File f = new File(path);
             f = f.isAbsolute() ? f : new File(Configuration.getDefault().getOutputDir(), path);
             try ( Writer wtr = new FileWriter(f);  PrintWriter pwtr = new PrintWriter(wtr)) {
-                lines.getStream().forEachOrdered(record -> {
-                    pwtr.println(
-                            record.getAll().stream()
-                                    .map(value -> value.replace("\"", "\"\""))
-                                    .collect(Collectors.joining("\",\"", "\"", "\""))
-                    );
-                });
+                StringBuilder line = new StringBuilder();
+                lines.getStream().forEachOrdered(record -> pwtr.println(toCSVLine(line, record)));
             }
         } catch (Throwable t) {
             throw new RuntimeException(t);
         }
     }
+
+    // the record's values, quoted and comma separated; the line buffer is reused
+    // from record to record
+    static CharSequence toCSVLine(StringBuilder line, DataRecord record) {
+        line.setLength(0);
+        line.append('"');
+        int[] columns = record.getSchema().getDistinctColumns();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                line.append("\",\"");
+            }
+            line.append(record.getField(columns[i]).replace("\"", "\"\""));
+        }
+        return line.append('"');
+    }
 }
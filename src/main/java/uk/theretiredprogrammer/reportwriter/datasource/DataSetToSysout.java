@@ -15,8 +15,6 @@
  */
 package uk.theretiredprogrammer.reportwriter.datasource;
 
-import java.util.stream.Collectors;
-
 public class DataSetToSysout {
 
     public static void display(String title, DataSetStream lines) {
@@ -29,13 +27,8 @@ public class DataSetToSysout {
             System.out.println(title);
             System.out.println();
         }
-        lines.forEachOrdered(record -> {
-            System.out.println(
-                    record.getAll().stream()
-                            .map(value -> value.replace("\"", "\"\""))
-                            .collect(Collectors.joining("\",\"", "\"", "\""))
-            );
-        });
+        StringBuilder line = new StringBuilder();
+        lines.forEachOrdered(record -> System.out.println(DataSetToCSV.toCSVLine(line, record)));
         System.out.println();
     }
 }
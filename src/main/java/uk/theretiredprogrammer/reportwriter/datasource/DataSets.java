@@ -18,15 +18,48 @@ package uk.theretiredprogrammer.reportwriter.datasource;
 import java.util.HashMap;
 import java.util.Map;
 
+// datasets may be saved concurrently (as the data statements are loaded)
+//
+// A dataset whose number of consumers (the statements reading it) is set is
+// kept only until the last of them has finished with it, so that just the
+// datasets still to be read are held. Views of a dataset being dropped are
+// materialized first, so that they no longer hold on to its columns.
 public class DataSets {
-        
-    private Map<String,StoredDataSet> datasets = new HashMap<>();
 
-    public StoredDataSet getDataSet(String datasetname) {
+    private final Map<String, StoredDataSet> datasets = new HashMap<>();
+    private final Map<String, Integer> consumercounts = new HashMap<>();
+
+    public synchronized StoredDataSet getDataSet(String datasetname) {
         return datasets.get(datasetname);
     }
-    
-    public void saveDataSet(String datasetname, StoredDataSet dataset) {
-        datasets.put(datasetname, dataset);
+
+    public synchronized void saveDataSet(String datasetname, StoredDataSet dataset) {
+        if (consumercounts.getOrDefault(datasetname, -1) == 0) {
+            dataset.release();
+        } else {
+            datasets.put(datasetname, dataset);
+        }
+    }
+
+    public synchronized void setConsumerCount(String datasetname, int count) {
+        if (count >= 0) {
+            consumercounts.put(datasetname, count);
+        }
+    }
+
+    // called as each consumer of the dataset finishes with it
+    public synchronized void consumed(String datasetname) {
+        Integer count = consumercounts.get(datasetname);
+        if (count == null) {
+            return;
+        }
+        consumercounts.put(datasetname, count - 1);
+        if (count == 1) {
+            StoredDataSet dataset = datasets.remove(datasetname);
+            if (dataset != null) {
+                datasets.values().stream().filter(other -> other.isViewOf(dataset)).forEach(other -> other.materialize());
+                dataset.release();
+            }
+        }
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Byte searches which test eight bytes at a time (SWAR - SIMD within a register).
+// Each long is read little endian, so the lowest matching byte is the first in
+// the buffer.
+final class DelimiterSearch {
+
+    private static final long LOWBITS = 0x0101010101010101L;
+    private static final long HIGHBITS = 0x8080808080808080L;
+    private static final long LOWSEVENBITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private DelimiterSearch() {
+    }
+
+    // returns the offset of the first byte in [from, limit) equal to a, b or c, or limit if none
+    static int indexOfAny(ByteBuffer buffer, int from, int limit, byte a, byte b, byte c) {
+        long patterna = LOWBITS * (a & 0xFF);
+        long patternb = LOWBITS * (b & 0xFF);
+        long patternc = LOWBITS * (c & 0xFF);
+        boolean bigendian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int offset = from;
+        while (offset + Long.BYTES <= limit) {
+            long word = buffer.getLong(offset);
+            if (bigendian) {
+                word = Long.reverseBytes(word);
+            }
+            long found = zeroBytes(word ^ patterna) | zeroBytes(word ^ patternb) | zeroBytes(word ^ patternc);
+            if (found != 0) {
+                return offset + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+            offset += Long.BYTES;
+        }
+        while (offset < limit) {
+            byte x = buffer.get(offset);
+            if (x == a || x == b || x == c) {
+                return offset;
+            }
+            offset++;
+        }
+        return limit;
+    }
+
+    // returns the number of bytes in [from, limit) equal to a
+    static int count(ByteBuffer buffer, int from, int limit, byte a) {
+        long pattern = LOWBITS * (a & 0xFF);
+        int count = 0;
+        int offset = from;
+        while (offset + Long.BYTES <= limit) {
+            count += Long.bitCount(exactZeroBytes(buffer.getLong(offset) ^ pattern));
+            offset += Long.BYTES;
+        }
+        while (offset < limit) {
+            if (buffer.get(offset++) == a) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // sets the high bit of the lowest zero byte; higher bytes may be false positives
+    private static long zeroBytes(long word) {
+        return (word - LOWBITS) & ~word & HIGHBITS;
+    }
+
+    // sets the high bit of every zero byte, and only those
+    private static long exactZeroBytes(long word) {
+        long t = (word & LOWSEVENBITS) + LOWSEVENBITS;
+        return ~(t | word | LOWSEVENBITS);
+    }
+}
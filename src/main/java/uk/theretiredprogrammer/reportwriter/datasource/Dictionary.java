@@ -0,0 +1,62 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// The distinct values of a dictionary encoded column, each numbered by an int
+// code. A column's values are read back as the dictionary's own strings, so
+// every occurrence of a value shares one String.
+class Dictionary {
+
+    static final int MAXSIZE = 1 << 16;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] values = new String[16];
+
+    int size() {
+        return codes.size();
+    }
+
+    // the value's code, adding it if new; -1 if it is new and the dictionary is full
+    int getCode(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        int size = codes.size();
+        if (size == MAXSIZE) {
+            return -1;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        codes.put(value, size);
+        return size;
+    }
+
+    // the value's code, or -1 if it is not in the dictionary
+    int findCode(String value) {
+        return codes.getOrDefault(value, -1);
+    }
+
+    String getValue(int code) {
+        return values[code];
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The names of the entries of a directory, read in a single pass and shared by
+// every data statement using the directory.
+//
+// An index is kept until the directory's own modified time changes (an entry
+// being added, removed or renamed), so in a long lived process it remains
+// valid from one run to the next. Rewriting an existing file in place does not
+// change the directory's modified time, so the modified times (in seconds) of
+// the entries matching a prefix are read afresh on each search; an entry
+// deleted since the directory was read is passed over.
+class DirectoryIndex {
+
+    private static final Map<Path, DirectoryIndex> indexes = new HashMap<>();
+
+    static synchronized DirectoryIndex get(File directory) throws IOException {
+        Path path = directory.toPath().toAbsolutePath().normalize();
+        FileTime modified = Files.getLastModifiedTime(path);
+        DirectoryIndex index = indexes.get(path);
+        if (index == null || !index.modified.equals(modified)) {
+            index = new DirectoryIndex(path, modified);
+            indexes.put(path, index);
+        }
+        return index;
+    }
+
+    private final Path directory;
+    private final FileTime modified;
+    private final List<String> names = new ArrayList<>();
+
+    private DirectoryIndex(Path directory, FileTime modified) throws IOException {
+        this.directory = directory;
+        this.modified = modified;
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                names.add(entry.getFileName().toString());
+            }
+        }
+    }
+
+    // returns the most recently modified entry whose name starts with prefix (the
+    // first found, if several share the latest time), or null if there is none
+    File getLatestStartingWith(String prefix) throws IOException {
+        long mostrecenttime = 0;
+        String mostrecentname = null;
+        for (String name : names) {
+            if (name.startsWith(prefix)) {
+                try {
+                    long time = Files.getLastModifiedTime(directory.resolve(name)).to(TimeUnit.SECONDS);
+                    if (time > mostrecenttime) {
+                        mostrecenttime = time;
+                        mostrecentname = name;
+                    }
+                } catch (NoSuchFileException ex) {
+                    // deleted since the directory was read
+                }
+            }
+        }
+        return mostrecentname == null ? null : directory.resolve(mostrecentname).toFile();
+    }
+}
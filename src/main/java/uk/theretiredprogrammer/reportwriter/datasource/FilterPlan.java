@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.language.DataTypes;
+import uk.theretiredprogrammer.reportwriter.language.Operand;
+import uk.theretiredprogrammer.reportwriter.language.functions.And;
+import uk.theretiredprogrammer.reportwriter.language.functions.DataRecordField;
+import uk.theretiredprogrammer.reportwriter.language.functions.Equals;
+import uk.theretiredprogrammer.reportwriter.language.functions.EqualsIgnoreCase;
+import uk.theretiredprogrammer.reportwriter.language.functions.Not;
+import uk.theretiredprogrammer.reportwriter.language.functions.NotEquals;
+import uk.theretiredprogrammer.reportwriter.language.functions.NotEqualsIgnoreCase;
+import uk.theretiredprogrammer.reportwriter.language.functions.Or;
+import uk.theretiredprogrammer.reportwriter.language.functions.StringLiteral;
+
+// Works out, from a filter, the rows of a stored dataset which may pass it.
+//
+// A comparison (==, =~, != or !~) of a named field with a constant is answered
+// by the dataset as a bitmap of rows, from the column's dictionary codes,
+// typed values or index; And, Or and Not combine the bitmaps of their operands
+// a word at a time, so a list of alternatives (as an IN) is answered too.
+// Anything else may pass any row. If every part of the filter was answered,
+// the rows found are exactly those which pass; if not, the filter must still
+// be evaluated for each of them.
+class FilterPlan {
+
+    static FilterPlan create(StoredDataSet dataset, BooleanExpression filter) {
+        return new FilterPlan(dataset, filter);
+    }
+
+    private final StoredDataSet dataset;
+    private final Found found;
+
+    private FilterPlan(StoredDataSet dataset, BooleanExpression filter) {
+        this.dataset = dataset;
+        this.found = find(filter);
+    }
+
+    // the rows, or null if every row may pass
+    RowBitmap getRows() {
+        return found == null ? null : found.rows;
+    }
+
+    // whether the rows found are exactly those which pass the filter
+    boolean isExact() {
+        return found != null && found.exact;
+    }
+
+    private Found find(Operand<?> expression) {
+        if (expression instanceof And || expression instanceof Or) {
+            Found lhs = find(expression.getOperands().get(0));
+            Found rhs = find(expression.getOperands().get(1));
+            if (expression instanceof Or) {
+                return lhs == null || rhs == null ? null : new Found(lhs.rows.or(rhs.rows), lhs.exact && rhs.exact);
+            }
+            if (lhs == null || rhs == null) {
+                return lhs == null && rhs == null ? null : new Found((lhs == null ? rhs : lhs).rows, false);
+            }
+            return new Found(lhs.rows.and(rhs.rows), lhs.exact && rhs.exact);
+        }
+        if (expression instanceof Not) {
+            Found operand = find(expression.getOperands().get(0));
+            return operand == null || !operand.exact ? null : new Found(operand.rows.not(), true);
+        }
+        boolean ignoringcase = expression instanceof EqualsIgnoreCase || expression instanceof NotEqualsIgnoreCase;
+        boolean negated = expression instanceof NotEquals || expression instanceof NotEqualsIgnoreCase;
+        if (ignoringcase || negated || expression instanceof Equals) {
+            Operand<?> lhs = expression.getOperands().get(0);
+            Operand<?> rhs = expression.getOperands().get(1);
+            RowBitmap rows = findComparisonRows(lhs, rhs, ignoringcase);
+            if (rows == null) {
+                rows = findComparisonRows(rhs, lhs, ignoringcase);
+            }
+            return rows == null ? null : new Found(negated ? rows.not() : rows, true);
+        }
+        return null;
+    }
+
+    private RowBitmap findComparisonRows(Operand<?> field, Operand<?> constant, boolean ignoringcase) {
+        if (!(field instanceof DataRecordField datarecordfield && datarecordfield.getFieldNameExpression() instanceof StringLiteral)
+                || !isConstant(constant)) {
+            return null;
+        }
+        int column = dataset.getSchema().getColumn(datarecordfield.getFieldNameExpression().toString());
+        if (column < 0) {
+            return null;
+        }
+        String value;
+        try {
+            value = DataTypes.isStringExpression(constant).evaluate(DataRecord.EMPTY);
+        } catch (RuntimeException ex) {
+            // left for the filter to report as it evaluates the rows
+            return null;
+        }
+        return value == null ? null : dataset.findRows(column, value, ignoringcase);
+    }
+
+    private boolean isConstant(Operand<?> expression) {
+        return !(expression instanceof DataRecordField)
+                && expression.getOperands().stream().allMatch(this::isConstant);
+    }
+
+    private static class Found {
+
+        private final RowBitmap rows;
+        private final boolean exact;
+
+        Found(RowBitmap rows, boolean exact) {
+            this.rows = rows;
+            this.exact = exact;
+        }
+    }
+}
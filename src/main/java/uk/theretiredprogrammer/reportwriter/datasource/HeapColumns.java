@@ -0,0 +1,121 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.Arrays;
+
+// Columns held as one array per column, of Strings, longs or dictionary codes.
+class HeapColumns extends Columns {
+
+    private static final int INITIALCAPACITY = 16;
+
+    private final String[][] strings;
+    private final long[][] longs;
+    private final int[][] codes;
+    private int capacity = INITIALCAPACITY;
+
+    HeapColumns(int columncount) {
+        super(columncount);
+        strings = new String[columncount][];
+        longs = new long[columncount][];
+        codes = new int[columncount][];
+        for (int column = 0; column < columncount; column++) {
+            strings[column] = new String[INITIALCAPACITY];
+        }
+    }
+
+    @Override
+    void ensureCapacity(int rows) {
+        if (rows > capacity) {
+            capacity = Math.max(rows, capacity * 2);
+            for (int column = 0; column < strings.length; column++) {
+                if (strings[column] != null) {
+                    strings[column] = Arrays.copyOf(strings[column], capacity);
+                } else if (longs[column] != null) {
+                    longs[column] = Arrays.copyOf(longs[column], capacity);
+                } else {
+                    codes[column] = Arrays.copyOf(codes[column], capacity);
+                }
+            }
+        }
+    }
+
+    @Override
+    String getString(int column, int row) {
+        return strings[column][row];
+    }
+
+    @Override
+    void setString(int column, int row, String value) {
+        strings[column][row] = value;
+    }
+
+    @Override
+    long getLong(int column, int row) {
+        return longs[column][row];
+    }
+
+    @Override
+    void setLong(int column, int row, long value) {
+        longs[column][row] = value;
+    }
+
+    @Override
+    int getCode(int column, int row) {
+        return codes[column][row];
+    }
+
+    @Override
+    void setCode(int column, int row, int code) {
+        codes[column][row] = code;
+    }
+
+    @Override
+    void convertToLongs(int column, int rows, ColumnType type) {
+        longs[column] = new long[capacity];
+        for (int row = 0; row < rows; row++) {
+            longs[column][row] = type.parse(strings[column][row]);
+        }
+        strings[column] = null;
+    }
+
+    @Override
+    void convertToStrings(int column, int rows, ColumnType type) {
+        strings[column] = new String[capacity];
+        for (int row = 0; row < rows; row++) {
+            strings[column][row] = type.format(longs[column][row]);
+        }
+        longs[column] = null;
+    }
+
+    @Override
+    void convertToCodes(int column, int rows, Dictionary dictionary) {
+        codes[column] = new int[capacity];
+        for (int row = 0; row < rows; row++) {
+            codes[column][row] = dictionary.getCode(strings[column][row]);
+        }
+        strings[column] = null;
+    }
+
+    @Override
+    void convertToStrings(int column, int rows, Dictionary dictionary) {
+        strings[column] = new String[capacity];
+        for (int row = 0; row < rows; row++) {
+            strings[column][row] = dictionary.getValue(codes[column][row]);
+        }
+        codes[column] = null;
+    }
+}
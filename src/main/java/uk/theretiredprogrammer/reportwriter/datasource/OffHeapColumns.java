@@ -0,0 +1,178 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Columns held outside the Java heap, in direct buffers, so that a very large
+// dataset adds little to the heap or to the work of the garbage collector.
+//
+// Values are written, as a varint byte length followed by UTF-8 bytes, into
+// 16MB chunks (a longer value has a chunk of its own). Each column has an
+// array of the addresses of its values - the chunk number in the upper 32
+// bits and the offset within the chunk in the lower - held in direct buffers
+// of 8192 rows. Values are decoded to a String each time they are read. A
+// column held as longs or dictionary codes keeps the values or codes
+// themselves in place of the addresses (a column's dictionary is on the heap).
+//
+// Direct buffers count against the JVM's -XX:MaxDirectMemorySize, which
+// defaults to the maximum heap size, so it needs raising to hold a dataset
+// larger than the heap.
+class OffHeapColumns extends Columns {
+
+    private static final int CHUNKSIZE = 1 << 24;
+    private static final int ROWSHIFT = 13;
+    private static final int ROWSPERBLOCK = 1 << ROWSHIFT;
+    private static final long NULLADDRESS = -1;
+    private static final long EMPTYADDRESS = -2;
+
+    private final ByteBuffer[][] addressblocks;
+    private int blockcount = 0;
+    private ByteBuffer[] chunks = new ByteBuffer[16];
+    private int chunkcount = 0;
+    private int chunkposition = CHUNKSIZE;
+
+    OffHeapColumns(int columncount) {
+        super(columncount);
+        addressblocks = new ByteBuffer[columncount][16];
+    }
+
+    @Override
+    void ensureCapacity(int rows) {
+        int blocks = (rows + ROWSPERBLOCK - 1) >>> ROWSHIFT;
+        while (blockcount < blocks) {
+            for (int column = 0; column < addressblocks.length; column++) {
+                if (blockcount == addressblocks[column].length) {
+                    addressblocks[column] = Arrays.copyOf(addressblocks[column], blockcount * 2);
+                }
+                addressblocks[column][blockcount] = ByteBuffer.allocateDirect(ROWSPERBLOCK * Long.BYTES);
+            }
+            blockcount++;
+        }
+    }
+
+    @Override
+    long getLong(int column, int row) {
+        return addressblocks[column][row >>> ROWSHIFT].getLong((row & (ROWSPERBLOCK - 1)) * Long.BYTES);
+    }
+
+    @Override
+    void setLong(int column, int row, long value) {
+        addressblocks[column][row >>> ROWSHIFT].putLong((row & (ROWSPERBLOCK - 1)) * Long.BYTES, value);
+    }
+
+    @Override
+    int getCode(int column, int row) {
+        return (int) getLong(column, row);
+    }
+
+    @Override
+    void setCode(int column, int row, int code) {
+        setLong(column, row, code);
+    }
+
+    @Override
+    void convertToCodes(int column, int rows, Dictionary dictionary) {
+        for (int row = 0; row < rows; row++) {
+            setCode(column, row, dictionary.getCode(getString(column, row)));
+        }
+    }
+
+    @Override
+    void convertToStrings(int column, int rows, Dictionary dictionary) {
+        for (int row = 0; row < rows; row++) {
+            setString(column, row, dictionary.getValue(getCode(column, row)));
+        }
+    }
+
+    @Override
+    void convertToLongs(int column, int rows, ColumnType type) {
+        for (int row = 0; row < rows; row++) {
+            setLong(column, row, type.parse(getString(column, row)));
+        }
+    }
+
+    @Override
+    void convertToStrings(int column, int rows, ColumnType type) {
+        for (int row = 0; row < rows; row++) {
+            setString(column, row, type.format(getLong(column, row)));
+        }
+    }
+
+    @Override
+    void setString(int column, int row, String value) {
+        setLong(column, row, write(value));
+    }
+
+    @Override
+    String getString(int column, int row) {
+        long address = getLong(column, row);
+        if (address == NULLADDRESS) {
+            return null;
+        }
+        if (address == EMPTYADDRESS) {
+            return "";
+        }
+        ByteBuffer chunk = chunks[(int) (address >>> 32)];
+        int offset = (int) address;
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = chunk.get(offset++);
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        byte[] bytes = new byte[length];
+        chunk.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long write(String value) {
+        if (value == null) {
+            return NULLADDRESS;
+        }
+        if (value.isEmpty()) {
+            return EMPTYADDRESS;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int size = 5 + bytes.length; // at most, with the length
+        if (chunkposition + size > CHUNKSIZE) {
+            newChunk(Math.max(CHUNKSIZE, size));
+        }
+        ByteBuffer chunk = chunks[chunkcount - 1];
+        long address = ((long) (chunkcount - 1) << 32) | chunkposition;
+        int length = bytes.length;
+        while ((length & ~0x7F) != 0) {
+            chunk.put(chunkposition++, (byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        chunk.put(chunkposition++, (byte) length);
+        chunk.put(chunkposition, bytes);
+        chunkposition += bytes.length;
+        return address;
+    }
+
+    private void newChunk(int size) {
+        if (chunkcount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkcount * 2);
+        }
+        chunks[chunkcount++] = ByteBuffer.allocateDirect(size);
+        chunkposition = 0;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+
+// Splits the records of a mapped CSV file into byte ranges which are parsed on
+// fork-join workers.
+//
+// A split point is moved forward to the first line ending which is outside a
+// quoted field; whether a position is inside quotes is derived from the parity
+// of the number of quotes preceding it (counted in a parallel first pass). As an
+// unquoted field may legally contain a quote, each range must also parse to
+// exactly its end; if any range does not, the split is rejected and the caller
+// falls back to a sequential parse.
+class ParallelCSVParser<T> {
+
+    private static final long MINRANGE = 1L << 20;
+    private static final long MAXRANGE = 1L << 28;
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final boolean[] parsedcolumns;
+    private final Function<List<String>, T> recordfactory;
+
+    // parsedcolumns are the columns to decode (all if null)
+    ParallelCSVParser(FileChannel channel, Charset charset, boolean[] parsedcolumns, Function<List<String>, T> recordfactory) {
+        this.channel = channel;
+        this.charset = charset;
+        this.parsedcolumns = parsedcolumns;
+        this.recordfactory = recordfactory;
+    }
+
+    // returns the records from offset "from" to the end of file in file order
+    // (leaving out any which the record factory maps to null), or null if the
+    // range boundaries could not be confirmed
+    List<T> parse(long from) throws IOException {
+        long size = channel.size();
+        List<Long> boundaries = getBoundaries(from);
+        List<List<T>> results = IntStream.range(0, boundaries.size() - 1).parallel()
+                .mapToObj(i -> parseRange(boundaries.get(i), boundaries.get(i + 1), boundaries.get(i + 1) == size))
+                .toList();
+        if (results.contains(null)) {
+            return null;
+        }
+        return results.stream().flatMap(List::stream).toList();
+    }
+
+    // the offsets at which the ranges start (the first being "from"), followed
+    // by the end of file
+    List<Long> getBoundaries(long from) throws IOException {
+        long size = channel.size();
+        long datasize = size - from;
+        int rangecount = (int) Math.min(ForkJoinPool.getCommonPoolParallelism() * 4L, Math.max(1, datasize / MINRANGE));
+        rangecount = (int) Math.max(rangecount, (datasize + MAXRANGE - 1) / MAXRANGE);
+        long[] starts = new long[rangecount + 1];
+        for (int i = 0; i < rangecount; i++) {
+            starts[i] = from + datasize * i / rangecount;
+        }
+        starts[rangecount] = size;
+        MappedByteBuffer[] ranges = new MappedByteBuffer[rangecount];
+        for (int i = 0; i < rangecount; i++) {
+            ranges[i] = channel.map(FileChannel.MapMode.READ_ONLY, starts[i], starts[i + 1] - starts[i]);
+        }
+        int[] quotes = IntStream.range(0, rangecount).parallel()
+                .map(i -> countQuotes(ranges[i]))
+                .toArray();
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(from);
+        int quotecount = 0;
+        for (int i = 1; i < rangecount; i++) {
+            quotecount += quotes[i - 1];
+            long boundary = findRecordStart(ranges[i], quotecount % 2 == 1);
+            if (boundary >= 0) {
+                boundaries.add(starts[i] + boundary);
+            }
+        }
+        boundaries.add(size);
+        return boundaries;
+    }
+
+    private int countQuotes(MappedByteBuffer range) {
+        return DelimiterSearch.count(range, 0, range.limit(), (byte) '"');
+    }
+
+    // returns the offset following the first line ending (\n, \r\n or \r) outside
+    // quotes, or -1 if none; a \r at the end of the range is passed over, as it
+    // may be the first half of a \r\n
+    private long findRecordStart(MappedByteBuffer range, boolean inquotes) {
+        int limit = range.limit();
+        int offset = 0;
+        while ((offset = DelimiterSearch.indexOfAny(range, offset, limit, (byte) '"', (byte) '\n', (byte) '\r')) < limit) {
+            byte b = range.get(offset++);
+            if (b == '"') {
+                inquotes = !inquotes;
+            } else if (!inquotes && (b == '\n' || offset < limit)) {
+                return b == '\r' && range.get(offset) == '\n' ? offset + 1 : offset;
+            }
+        }
+        return -1;
+    }
+
+    // the first byte of the following range is mapped too, so that a \r ending
+    // this range is seen to be a complete line ending; no record can be
+    // completed by that one byte other than an empty line, which fails the check
+    // that the range is parsed to exactly its end
+    private List<T> parseRange(long start, long end, boolean eof) {
+        if (end - start >= Integer.MAX_VALUE) {
+            return null;
+        }
+        List<T> records = new ArrayList<>();
+        try {
+            int length = (int) (end - start);
+            int mappedlength = eof ? length : length + 1;
+            MappedByteBuffer range = channel.map(FileChannel.MapMode.READ_ONLY, start, mappedlength);
+            CSVByteParser parser = new CSVByteParser(charset, () -> parsedcolumns, fields -> {
+                T record = recordfactory.apply(fields);
+                if (record != null) {
+                    records.add(record);
+                }
+            });
+            return parser.parse(range, 0, mappedlength, eof) == length ? records : null;
+        } catch (IOException ex) {
+            throw new RPTWTRRuntimeException(ex);
+        } catch (RuntimeException ex) {
+            // possibly a consequence of a bad split - the sequential parse will report any real error
+            return null;
+        }
+    }
+}
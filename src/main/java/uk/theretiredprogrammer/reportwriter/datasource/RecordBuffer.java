@@ -0,0 +1,105 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The fields of one CSV record, held as the end offsets of each field in a
+// single character buffer. The buffer is cleared and reused for every record,
+// so a field only becomes a String when it is copied out, and then only into
+// an array which the caller reuses.
+//
+// Used by the character parser, which reads only input that cannot be parsed
+// as bytes (a charset which is not ASCII compatible, or an unsupported byte
+// order mark); CSVByteParser reads everything else.
+class RecordBuffer {
+
+    private char[] chars = new char[1024];
+    private int length;
+    private int[] fieldends = new int[64];
+    private int fieldcount;
+
+    void clear() {
+        length = 0;
+        fieldcount = 0;
+    }
+
+    void append(char c) {
+        ensureCapacity(length + 1);
+        chars[length++] = c;
+    }
+
+    void append(char[] source, int offset, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(source, offset, chars, length, count);
+        length += count;
+    }
+
+    // completes the current field; the next characters appended start a new one
+    void endField() {
+        if (fieldcount == fieldends.length) {
+            fieldends = Arrays.copyOf(fieldends, fieldcount * 2);
+        }
+        fieldends[fieldcount++] = length;
+    }
+
+    int getFieldCount() {
+        return fieldcount;
+    }
+
+    // a view of the field's characters, valid until the buffer is cleared
+    CharSequence getField(int field) {
+        int start = getFieldStart(field);
+        return CharBuffer.wrap(chars, start, fieldends[field] - start);
+    }
+
+    String getFieldString(int field) {
+        int start = getFieldStart(field);
+        return new String(chars, start, fieldends[field] - start);
+    }
+
+    List<String> getFields() {
+        List<String> fields = new ArrayList<>(fieldcount);
+        for (int i = 0; i < fieldcount; i++) {
+            fields.add(getFieldString(i));
+        }
+        return fields;
+    }
+
+    // copies the fields whose columns are set (all if columns is null) into
+    // values, which must have room for them
+    void getFields(boolean[] columns, String[] values) {
+        int count = 0;
+        for (int i = 0; i < fieldcount; i++) {
+            if (columns == null || columns[i]) {
+                values[count++] = getFieldString(i);
+            }
+        }
+    }
+
+    private int getFieldStart(int field) {
+        return field == 0 ? 0 : fieldends[field - 1];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+        }
+    }
+}
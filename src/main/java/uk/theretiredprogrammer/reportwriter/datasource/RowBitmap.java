@@ -0,0 +1,217 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+// A set of a dataset's rows, as a bitmap in chunks of 65536 rows. A chunk
+// with no rows in the set is null, and one with every row is FULL, so large
+// runs of either take no space; any other chunk is 1024 words of bits. Sets
+// are combined a chunk at a time, and within a chunk a word at a time.
+//
+// A bitmap is built by adding rows in any order; once combined with another
+// it must not be added to.
+class RowBitmap {
+
+    private static final int CHUNKSHIFT = 16;
+    private static final int CHUNKROWS = 1 << CHUNKSHIFT;
+    private static final int WORDS = CHUNKROWS / Long.SIZE;
+    private static final long[] FULL = new long[WORDS];
+
+    static {
+        Arrays.fill(FULL, -1L);
+    }
+
+    private final int rowcount;
+    private final long[][] chunks;
+
+    RowBitmap(int rowcount) {
+        this.rowcount = rowcount;
+        this.chunks = new long[(rowcount + CHUNKROWS - 1) >>> CHUNKSHIFT][];
+    }
+
+    static RowBitmap of(int rowcount, int[] rows) {
+        RowBitmap bitmap = new RowBitmap(rowcount);
+        for (int row : rows) {
+            bitmap.add(row);
+        }
+        return bitmap.compact();
+    }
+
+    void add(int row) {
+        int chunk = row >>> CHUNKSHIFT;
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new long[WORDS];
+        } else if (chunks[chunk] == FULL) {
+            return;
+        }
+        chunks[chunk][(row & (CHUNKROWS - 1)) >>> 6] |= 1L << row;
+    }
+
+    // replaces chunks with no rows or every row in the set by null or FULL
+    RowBitmap compact() {
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = normalize(chunk, chunks[chunk]);
+        }
+        return this;
+    }
+
+    boolean contains(int row) {
+        long[] words = chunks[row >>> CHUNKSHIFT];
+        return words != null && (words[(row & (CHUNKROWS - 1)) >>> 6] & (1L << row)) != 0;
+    }
+
+    RowBitmap and(RowBitmap other) {
+        RowBitmap result = new RowBitmap(rowcount);
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            long[] words1 = chunks[chunk];
+            long[] words2 = other.chunks[chunk];
+            if (words1 == null || words2 == null) {
+                result.chunks[chunk] = null;
+            } else if (words1 == FULL || words2 == FULL) {
+                result.chunks[chunk] = words1 == FULL ? words2 : words1;
+            } else {
+                long[] words = new long[WORDS];
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] = words1[i] & words2[i];
+                }
+                result.chunks[chunk] = normalize(chunk, words);
+            }
+        }
+        return result;
+    }
+
+    RowBitmap or(RowBitmap other) {
+        RowBitmap result = new RowBitmap(rowcount);
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            long[] words1 = chunks[chunk];
+            long[] words2 = other.chunks[chunk];
+            if (words1 == FULL || words2 == FULL) {
+                result.chunks[chunk] = FULL;
+            } else if (words1 == null || words2 == null) {
+                result.chunks[chunk] = words1 == null ? words2 : words1;
+            } else {
+                long[] words = new long[WORDS];
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] = words1[i] | words2[i];
+                }
+                result.chunks[chunk] = normalize(chunk, words);
+            }
+        }
+        return result;
+    }
+
+    RowBitmap not() {
+        RowBitmap result = new RowBitmap(rowcount);
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            long[] words1 = chunks[chunk];
+            if (words1 == null || words1 == FULL) {
+                result.chunks[chunk] = words1 == null ? FULL : null;
+            } else {
+                long[] words = new long[WORDS];
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] = ~words1[i];
+                }
+                result.chunks[chunk] = normalize(chunk, words);
+            }
+        }
+        return result;
+    }
+
+    // the rows in the set, in order - taken one at a time, as a cursor moved
+    // to each row must be used before the next row is taken
+    IntStream stream() {
+        return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(new RowIterator(),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    // clears the bits beyond the last row, and replaces words with no bits or
+    // every row's bit set by null or FULL
+    private long[] normalize(int chunk, long[] words) {
+        if (words == null || words == FULL) {
+            return words;
+        }
+        int rows = Math.min(CHUNKROWS, rowcount - (chunk << CHUNKSHIFT));
+        int fullwords = rows >>> 6;
+        boolean partword = (rows & 63) != 0;
+        long partmask = (1L << rows) - 1; // the bits of the rows of a part filled last word
+        for (int i = fullwords; i < WORDS; i++) {
+            words[i] = i == fullwords && partword ? words[i] & partmask : 0;
+        }
+        boolean empty = true;
+        boolean full = true;
+        for (int i = 0; i < WORDS; i++) {
+            empty &= words[i] == 0;
+            if (i < fullwords) {
+                full &= words[i] == -1L;
+            }
+        }
+        if (partword) {
+            full &= words[fullwords] == partmask;
+        }
+        return empty ? null : full ? FULL : words;
+    }
+
+    private class RowIterator implements PrimitiveIterator.OfInt {
+
+        private int chunk = -1;
+        private int word = WORDS;
+        private long bits;
+        private int fullrow;
+        private int fullend;
+
+        @Override
+        public boolean hasNext() {
+            while (bits == 0 && fullrow == fullend) {
+                if (word < WORDS - 1 && chunks[chunk] != FULL) {
+                    bits = chunks[chunk][++word];
+                } else if (chunk < chunks.length - 1) {
+                    long[] words = chunks[++chunk];
+                    word = WORDS;
+                    if (words == FULL) {
+                        fullrow = chunk << CHUNKSHIFT;
+                        fullend = Math.min(fullrow + CHUNKROWS, rowcount);
+                    } else if (words != null) {
+                        word = 0;
+                        bits = words[0];
+                    }
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (fullrow < fullend) {
+                return fullrow++;
+            }
+            int row = (chunk << CHUNKSHIFT) + (word << 6) + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            return row;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The headers of a dataset and the column of each, shared by the dataset and
+// all its records; a header which occurs more than once names its last column.
+public class Schema {
+
+    private final List<String> headers;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final int[] distinctcolumns;
+
+    public Schema(List<String> headers) {
+        this.headers = headers;
+        for (int column = 0; column < headers.size(); column++) {
+            columns.put(headers.get(column), column);
+        }
+        distinctcolumns = headers.stream().distinct().mapToInt(columns::get).toArray();
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public int size() {
+        return headers.size();
+    }
+
+    // returns -1 if there is no such header
+    public int getColumn(String header) {
+        return columns.getOrDefault(header, -1);
+    }
+
+    // one column for each distinct header (its last), in the order the headers first occur
+    int[] getDistinctColumns() {
+        return distinctcolumns;
+    }
+}
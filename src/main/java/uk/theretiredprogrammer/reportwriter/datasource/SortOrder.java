@@ -0,0 +1,133 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Works out the order of a dataset's rows when sorted by a list of columns,
+// equal rows keeping their stored order.
+//
+// Each sort column is first reduced to a long key per row - its value, for a
+// column held as longs, or the rank of its string among the column's distinct
+// values (its dictionary's values, if it is dictionary encoded) - so that the
+// sort itself (a merge sort of row numbers) compares longs only.
+class SortOrder {
+
+    private static final int INSERTIONSORTLIMIT = 16;
+
+    // rows are the dataset's row numbers and ownerrows the corresponding rows
+    // of the columns (the same, unless the dataset is a view)
+    static int[] create(Columns columns, int[] ownerrows, int[] sortcolumns) {
+        long[][] keys = new long[sortcolumns.length][];
+        for (int i = 0; i < sortcolumns.length; i++) {
+            keys[i] = getKeys(columns, ownerrows, sortcolumns[i]);
+        }
+        int[] order = new int[ownerrows.length];
+        for (int row = 0; row < order.length; row++) {
+            order[row] = row;
+        }
+        new SortOrder(keys).sort(order, order.clone(), 0, order.length);
+        return order;
+    }
+
+    private static long[] getKeys(Columns columns, int[] ownerrows, int column) {
+        long[] keys = new long[ownerrows.length];
+        if (columns.getType(column) != ColumnType.STRING) {
+            for (int row = 0; row < ownerrows.length; row++) {
+                keys[row] = columns.getLong(column, ownerrows[row]);
+            }
+            return keys;
+        }
+        Dictionary dictionary = columns.getDictionary(column);
+        if (dictionary != null) {
+            Integer[] codes = new Integer[dictionary.size()];
+            for (int code = 0; code < codes.length; code++) {
+                codes[code] = code;
+            }
+            Arrays.sort(codes, (code1, code2) -> dictionary.getValue(code1).compareTo(dictionary.getValue(code2)));
+            int[] ranks = new int[codes.length];
+            for (int rank = 0; rank < codes.length; rank++) {
+                ranks[codes[rank]] = rank;
+            }
+            for (int row = 0; row < ownerrows.length; row++) {
+                keys[row] = ranks[columns.getCode(column, ownerrows[row])];
+            }
+            return keys;
+        }
+        String[] values = new String[ownerrows.length];
+        Map<String, Integer> ranks = new HashMap<>();
+        for (int row = 0; row < ownerrows.length; row++) {
+            values[row] = columns.getString(column, ownerrows[row]);
+            ranks.put(values[row], 0);
+        }
+        String[] distinct = ranks.keySet().toArray(new String[0]);
+        Arrays.sort(distinct);
+        for (int rank = 0; rank < distinct.length; rank++) {
+            ranks.put(distinct[rank], rank);
+        }
+        for (int row = 0; row < ownerrows.length; row++) {
+            keys[row] = ranks.get(values[row]);
+        }
+        return keys;
+    }
+
+    private final long[][] keys;
+
+    private SortOrder(long[][] keys) {
+        this.keys = keys;
+    }
+
+    // sorts rows from to to (exclusive) of order, using work, which holds the
+    // same rows on entry
+    private void sort(int[] order, int[] work, int from, int to) {
+        if (to - from <= INSERTIONSORTLIMIT) {
+            for (int i = from + 1; i < to; i++) {
+                int row = order[i];
+                int j = i;
+                while (j > from && compare(order[j - 1], row) > 0) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = row;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(work, order, from, middle);
+        sort(work, order, middle, to);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compare(work[left], work[right]) <= 0)) {
+                order[i] = work[left++];
+            } else {
+                order[i] = work[right++];
+            }
+        }
+    }
+
+    private int compare(int row1, int row2) {
+        for (long[] columnkeys : keys) {
+            int cmp = Long.compare(columnkeys[row1], columnkeys[row2]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+}
@@ -15,23 +15,163 @@
  */
 package uk.theretiredprogrammer.reportwriter.datasource;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+import uk.theretiredprogrammer.reportwriter.language.functions.DataRecordField;
 
+// The records are stored by column - on the heap, or off it for very large
+// datasets - and are read through lightweight row records which index into the
+// columns. Rows of the same dataset compare their fields by the column's type,
+// so numbers and dates sort by value.
+//
+// A cursor stream reads every row through a single row record, moved on from
+// row to row, so nothing is allocated per row. The records of a cursor stream
+// must be finished with before the next is read - they can be filtered,
+// evaluated, written or copied into another StoredDataSet, but not sorted or
+// collected.
+//
+// The order of the rows when sorted by a list of columns is kept once worked
+// out (for the most recently used few lists), so the dataset can be read in
+// that order again without sorting. Equal rows keep their stored order, so
+// filtering the sorted rows gives the same order as sorting the filtered ones.
+//
+// A filtered stream of the dataset reads only the rows found by the filter's
+// plan, from the dictionary codes or indexes of the columns it compares with
+// constants, and evaluates the filter only if the plan did not answer it all.
+// An index is built when first wanted, and kept until rows are inserted or the
+// dataset is released.
+//
+// A dataset made from rows of another stored dataset (as a filtered or sorted
+// generated dataset is) is a view: it shares the other dataset's columns and
+// holds just the numbers of its rows, in order. A view is copied into columns
+// of its own when it is materialized, or when records are inserted into it.
 public class StoredDataSet extends DataSet {
 
-    private final List<DataRecord> dataset = new ArrayList<>();
+    private static final int INITIALCAPACITY = 16;
+    private static final int MAXSORTORDERS = 4;
+
+    private final boolean offheap;
+    private Columns columns;
+    private StoredDataSet owner; // the dataset whose columns these are
+    private int[] selection; // the rows of a view in its owner's columns; null if not a view
+    private int rowcount = 0;
+    private final Map<Integer, ColumnIndex> indexes = new HashMap<>();
+    private final Map<List<Integer>, int[]> sortorders = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Integer>, int[]> eldest) {
+            return size() > MAXSORTORDERS;
+        }
+    };
 
     public StoredDataSet(List<String> headers) {
-        super(headers);
+        this(new Schema(headers), false);
     }
 
     public StoredDataSet(Stream<String> headers) {
-        super(headers);
+        this(headers.toList());
+    }
+
+    public StoredDataSet(Schema schema) {
+        this(schema, false);
+    }
+
+    public StoredDataSet(Schema schema, boolean offheap) {
+        super(schema);
+        this.offheap = offheap;
+        columns = offheap ? new OffHeapColumns(schema.size()) : new HeapColumns(schema.size());
+        owner = this;
+    }
+
+    // a dataset of the first rows of the columns (as read from a snapshot)
+    StoredDataSet(Schema schema, boolean offheap, Columns columns, int rowcount) {
+        super(schema);
+        this.offheap = offheap;
+        this.columns = columns;
+        this.rowcount = rowcount;
+        owner = this;
+    }
+
+    private StoredDataSet(StoredDataSet owner, int[] selection, int rowcount) {
+        super(owner.getSchema());
+        this.offheap = owner.offheap;
+        this.columns = owner.columns;
+        this.owner = owner;
+        this.selection = selection;
+        this.rowcount = rowcount;
+    }
+
+    // a dataset of the records: if they are all rows of one stored dataset
+    // with the given schema, a view of that dataset, otherwise a copy
+    static StoredDataSet create(Schema schema, boolean offheap, Stream<DataRecord> datarecords) {
+        StoredDataSet owner = null;
+        int[] rows = new int[INITIALCAPACITY];
+        int count = 0;
+        Iterator<DataRecord> iterator = datarecords.iterator();
+        while (iterator.hasNext()) {
+            DataRecord datarecord = iterator.next();
+            if (datarecord instanceof Row row && row.getSchema() == schema && (owner == null || row.getOwner() == owner)) {
+                owner = row.getOwner();
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row.getOwnerRow();
+            } else {
+                StoredDataSet dataset = new StoredDataSet(schema, offheap);
+                for (int i = 0; i < count; i++) {
+                    dataset.insertDataRecord(owner.getDataRecord(rows[i]));
+                }
+                dataset.insertDataRecord(datarecord);
+                iterator.forEachRemaining(dataset::insertDataRecord);
+                return dataset;
+            }
+        }
+        return owner == null ? new StoredDataSet(schema, offheap) : new StoredDataSet(owner, rows, count);
+    }
+
+    public boolean isView() {
+        return selection != null;
+    }
+
+    public boolean isViewOf(StoredDataSet dataset) {
+        return selection != null && owner == dataset;
+    }
+
+    // copies a view's rows into columns of its own, so that it no longer
+    // depends on the dataset it views
+    public void materialize() {
+        if (selection == null) {
+            return;
+        }
+        Columns copy = offheap ? new OffHeapColumns(getSchema().size()) : new HeapColumns(getSchema().size());
+        copy.ensureCapacity(rowcount);
+        for (int row = 0; row < rowcount; row++) {
+            for (int column = 0; column < getSchema().size(); column++) {
+                copy.set(column, row, columns.get(column, selection[row]));
+            }
+        }
+        columns = copy;
+        owner = this;
+        selection = null;
+    }
+
+    // the columns holding the dataset's rows (its owner's, for a view)
+    Columns getColumns() {
+        return columns;
+    }
+
+    public boolean isOffHeap() {
+        return offheap;
     }
 
     public DataSetStream createDataRecordStream() {
@@ -42,31 +182,275 @@ public class StoredDataSet extends DataSet {
         return new DataSetStream(headers, this.getStream());
     }
 
+    public DataSetStream createDataRecordCursor() {
+        return new DataSetStream(this, getCursorStream());
+    }
+
+    // the records which pass the filter (all, if it is null), through a cursor
+    public DataSetStream createDataRecordCursor(BooleanExpression filter) {
+        Row cursor = new Row(0);
+        return new DataSetStream(this, getRecords(null, filter, cursor::moveTo));
+    }
+
+    // the records which pass the filter (all, if it is null), a record per row
+    public DataSetStream createDataRecordStream(BooleanExpression filter) {
+        return new DataSetStream(this, getRecords(null, filter, this::getDataRecord));
+    }
+
+    // the records of the rows in the order given (or stored order, if null)
+    // which pass the filter
+    private Stream<DataRecord> getRecords(int[] order, BooleanExpression filter, IntFunction<DataRecord> records) {
+        IntStream rows = order == null ? IntStream.range(0, rowcount) : Arrays.stream(order);
+        if (filter == null) {
+            return rows.mapToObj(records);
+        }
+        FilterPlan plan = FilterPlan.create(this, filter);
+        RowBitmap found = plan.getRows();
+        if (found != null) {
+            rows = order == null ? found.stream() : rows.filter(found::contains);
+        }
+        if (plan.isExact()) {
+            return rows.mapToObj(records);
+        }
+        DataRecordField.bind(filter, getSchema());
+        return rows.mapToObj(records).filter(datarecord -> filter.evaluate(datarecord));
+    }
+
+    // the rows whose value of the column equals the value - found by comparing
+    // codes, for a dictionary encoded column, or values, for a typed column, in
+    // the blocks of rows whose zone maps allow the value, or otherwise from the
+    // column's index (unless few blocks allow the value, and there is no index
+    // yet, when those blocks are searched)
+    RowBitmap findRows(int column, String value, boolean ignoringcase) {
+        RowBitmap rows = new RowBitmap(rowcount);
+        Dictionary dictionary = columns.getDictionary(column);
+        ColumnType type = columns.getType(column);
+        boolean[] candidates = columns.getZoneMap().getCandidateBlocks(column, value, ignoringcase);
+        if (dictionary != null) {
+            boolean[] matching = new boolean[dictionary.size()];
+            for (int code = 0; code < matching.length; code++) {
+                String codevalue = dictionary.getValue(code);
+                matching[code] = codevalue != null && (ignoringcase ? codevalue.equalsIgnoreCase(value) : codevalue.equals(value));
+            }
+            forEachCandidateRow(candidates, (row, ownerrow) -> {
+                if (matching[columns.getCode(column, ownerrow)]) {
+                    rows.add(row);
+                }
+            });
+        } else if (type != ColumnType.STRING && !ignoringcase) {
+            // a typed column's values are all canonical, so only a canonical constant can equal one
+            long longvalue = type.parse(value);
+            if (longvalue != ColumnType.INVALID) {
+                forEachCandidateRow(candidates, (row, ownerrow) -> {
+                    if (columns.getLong(column, ownerrow) == longvalue) {
+                        rows.add(row);
+                    }
+                });
+            }
+        } else if (hasIndex(column) || countCandidates(candidates) > candidates.length / 4) {
+            ColumnIndex index = getIndex(column);
+            return ignoringcase ? index.getRowsIgnoringCase(value) : index.getRows(value);
+        } else {
+            forEachCandidateRow(candidates, (row, ownerrow) -> {
+                String rowvalue = columns.get(column, ownerrow);
+                if (rowvalue != null && (ignoringcase ? rowvalue.equalsIgnoreCase(value) : rowvalue.equals(value))) {
+                    rows.add(row);
+                }
+            });
+        }
+        return rows.compact();
+    }
+
+    // calls the action for each row (in order) held in one of the candidate blocks
+    private void forEachCandidateRow(boolean[] candidates, RowAction action) {
+        if (selection == null) {
+            for (int block = 0; block < candidates.length; block++) {
+                if (candidates[block]) {
+                    int end = Math.min((block + 1) << ZoneMap.BLOCKSHIFT, rowcount);
+                    for (int row = block << ZoneMap.BLOCKSHIFT; row < end; row++) {
+                        action.apply(row, row);
+                    }
+                }
+            }
+        } else {
+            for (int row = 0; row < rowcount; row++) {
+                int ownerrow = selection[row];
+                if (candidates[ownerrow >>> ZoneMap.BLOCKSHIFT]) {
+                    action.apply(row, ownerrow);
+                }
+            }
+        }
+    }
+
+    private interface RowAction {
+
+        void apply(int row, int ownerrow);
+    }
+
+    private int countCandidates(boolean[] candidates) {
+        int count = 0;
+        for (boolean candidate : candidates) {
+            if (candidate) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int getOwnerRow(int row) {
+        return selection == null ? row : selection[row];
+    }
+
+    private synchronized boolean hasIndex(int column) {
+        return indexes.containsKey(column);
+    }
+
+    private synchronized ColumnIndex getIndex(int column) {
+        return indexes.computeIfAbsent(column, c -> new ColumnIndex(rowcount, row -> columns.get(c, getOwnerRow(row))));
+    }
+
+    public DataSetStream createDataRecordCursor(List<String> headers) {
+        return new DataSetStream(headers, getCursorStream());
+    }
+
+    public DataSetStream createSortedDataRecordCursor(ExpressionList sortfields) {
+        return createSortedDataRecordCursor(sortfields, null);
+    }
+
+    // the records which pass the filter (all, if it is null) in the order of the
+    // sort fields, through a cursor; null if a sort field is not one of the
+    // dataset's headers
+    public DataSetStream createSortedDataRecordCursor(ExpressionList sortfields, BooleanExpression filter) {
+        int[] sortcolumns = sortfields.stream()
+                .map(operand -> DataTypes.isStringExpression(operand).evaluate(DataRecord.EMPTY))
+                .mapToInt(getSchema()::getColumn)
+                .toArray();
+        if (Arrays.stream(sortcolumns).anyMatch(column -> column < 0)) {
+            return null;
+        }
+        Row cursor = new Row(0);
+        return new DataSetStream(this, getRecords(getSortOrder(sortcolumns), filter, cursor::moveTo));
+    }
+
+    private synchronized int[] getSortOrder(int[] sortcolumns) {
+        List<Integer> key = Arrays.stream(sortcolumns).boxed().toList();
+        int[] order = sortorders.get(key);
+        if (order == null) {
+            int[] ownerrows = selection == null ? IntStream.range(0, rowcount).toArray() : Arrays.copyOf(selection, rowcount);
+            order = SortOrder.create(columns, ownerrows, sortcolumns);
+            sortorders.put(key, order);
+        }
+        return order;
+    }
+
+    // drops the kept indexes and sort orders
+    public synchronized void release() {
+        indexes.clear();
+        sortorders.clear();
+    }
+
     public Stream<DataRecord> getStream() {
-        return dataset.stream();
+        return IntStream.range(0, rowcount).mapToObj(this::getDataRecord);
+    }
+
+    // one cursor per stream, so each thread running a pipeline has its own
+    Stream<DataRecord> getCursorStream() {
+        Row cursor = new Row(0);
+        return IntStream.range(0, rowcount).mapToObj(cursor::moveTo);
+    }
+
+    DataRecord getDataRecord(int row) {
+        return new Row(row);
+    }
+
+    public int size() {
+        return rowcount;
     }
 
     public void insertDataRecord(Stream<String> fields) {
-        dataset.add(new DataRecord(getHeaders(), fields));
+        insertDataRecord(fields.toList());
     }
 
     public void insertDataRecord(List<String> fields) {
-        dataset.add(new DataRecord(getHeaders(), fields));
+        DataRecord.checkFieldCount(getSchema().size(), fields.size());
+        materialize();
+        int row = newRow();
+        for (int column = 0; column < fields.size(); column++) {
+            columns.set(column, row, fields.get(column));
+        }
+    }
+
+    // a record with the dataset's headers is copied by position, any other by header
+    public void insertDataRecord(DataRecord datarecord) {
+        boolean samecolumns = datarecord.getSchema() == getSchema() || datarecord.getSchema().getHeaders().equals(getHeaders());
+        materialize();
+        int row = newRow();
+        for (int column = 0; column < getSchema().size(); column++) {
+            columns.set(column, row, samecolumns ? datarecord.getField(column) : datarecord.get(getHeaders().get(column)));
+        }
     }
 
     public StoredDataSet insertDataRecords(Stream<DataRecord> datarecords) {
-        datarecords.forEach(dr -> dataset.add(dr));
+        datarecords.forEach(this::insertDataRecord);
         return this;
     }
 
+    private int newRow() {
+        if (!sortorders.isEmpty() || !indexes.isEmpty()) {
+            release();
+        }
+        columns.ensureCapacity(rowcount + 1);
+        return rowcount++;
+    }
+
     public List<String> evaluateheaders(ExpressionList headerexpressions) {
-        DataRecord datarecord = dataset.get(0);
+        DataRecord datarecord = getDataRecord(0);
         return headerexpressions.stream()
                 .map(operand -> DataTypes.isStringExpression(operand).evaluate(datarecord))
                 .collect(Collectors.toList());
     }
     
     public boolean isEmpty() {
-        return dataset.isEmpty();
+        return rowcount == 0;
+    }
+
+    // a row of the dataset, which reads its owner's columns
+    private class Row extends DataRecord {
+
+        private final StoredDataSet rowowner = owner;
+        private final Columns rowcolumns = columns;
+        private final int[] rowselection = selection;
+        private int ownerrow;
+
+        Row(int row) {
+            super(StoredDataSet.this.getSchema());
+            moveTo(row);
+        }
+
+        final Row moveTo(int row) {
+            ownerrow = rowselection == null ? row : rowselection[row];
+            return this;
+        }
+
+        StoredDataSet getOwner() {
+            return rowowner;
+        }
+
+        int getOwnerRow() {
+            return ownerrow;
+        }
+
+        @Override
+        public String getField(int column) {
+            return rowcolumns.get(column, ownerrow);
+        }
+
+        @Override
+        int compareField(int column, DataRecord other) {
+            if (other instanceof Row otherrow && otherrow.rowcolumns == rowcolumns) {
+                return rowcolumns.compare(column, ownerrow, otherrow.ownerrow);
+            }
+            return super.compareField(column, other);
+        }
     }
 }
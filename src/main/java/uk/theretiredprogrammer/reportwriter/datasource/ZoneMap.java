@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.Arrays;
+
+// A summary of each block of BLOCKSIZE rows of every column, gathered as the
+// values are set: the least and greatest of the block's values and, while
+// there are no more than MAXDISTINCT of them, the distinct values. This is
+// enough to tell that a block cannot hold a value, so a search for the value
+// can skip the block. Empty (null) values are not summarised, as they never
+// equal a value searched for.
+class ZoneMap {
+
+    static final int BLOCKSHIFT = 12;
+    static final int BLOCKSIZE = 1 << BLOCKSHIFT;
+    static final int MAXDISTINCT = 8;
+
+    private final int columncount;
+    private Zone[] zones; // by block, then column
+    private int blockcount = 0;
+
+    ZoneMap(int columncount) {
+        this.columncount = columncount;
+        zones = new Zone[columncount * 16];
+    }
+
+    void add(int column, int row, String value) {
+        int block = row >>> BLOCKSHIFT;
+        addBlocks(block + 1);
+        if (value != null) {
+            int z = block * columncount + column;
+            if (zones[z] == null) {
+                zones[z] = new Zone(value);
+            } else {
+                zones[z].add(value);
+            }
+        }
+    }
+
+    private void addBlocks(int blocks) {
+        if (blocks > blockcount) {
+            blockcount = blocks;
+            if (blockcount * columncount > zones.length) {
+                zones = Arrays.copyOf(zones, Math.max(blockcount * columncount, zones.length * 2));
+            }
+        }
+    }
+
+    // the column's zone in the block, or null if the block has no values of
+    // the column (for a snapshot)
+    Zone getZone(int column, int block) {
+        return zones[block * columncount + column];
+    }
+
+    void setZone(int column, int block, Zone zone) {
+        addBlocks(block + 1);
+        zones[block * columncount + column] = zone;
+    }
+
+    int getBlockCount() {
+        return blockcount;
+    }
+
+    // the blocks which may hold a value of the column equal to the value
+    boolean[] getCandidateBlocks(int column, String value, boolean ignoringcase) {
+        boolean[] candidates = new boolean[blockcount];
+        for (int block = 0; block < blockcount; block++) {
+            Zone zone = zones[block * columncount + column];
+            candidates[block] = zone != null && zone.mayContain(value, ignoringcase);
+        }
+        return candidates;
+    }
+
+    static class Zone {
+
+        private String min;
+        private String max;
+        private String[] distinct = new String[MAXDISTINCT]; // null when there are more
+        private int distinctcount = 0;
+
+        Zone(String value) {
+            min = value;
+            max = value;
+            distinct[distinctcount++] = value;
+        }
+
+        // distinctvalues is null if there are more than MAXDISTINCT
+        Zone(String min, String max, String[] distinctvalues) {
+            this.min = min;
+            this.max = max;
+            if (distinctvalues == null) {
+                distinct = null;
+            } else {
+                System.arraycopy(distinctvalues, 0, distinct, 0, distinctvalues.length);
+                distinctcount = distinctvalues.length;
+            }
+        }
+
+        String getMin() {
+            return min;
+        }
+
+        String getMax() {
+            return max;
+        }
+
+        // null if there are more than MAXDISTINCT
+        String[] getDistinct() {
+            return distinct == null ? null : Arrays.copyOf(distinct, distinctcount);
+        }
+
+        void add(String value) {
+            if (value.compareTo(min) < 0) {
+                min = value;
+            } else if (value.compareTo(max) > 0) {
+                max = value;
+            }
+            if (distinct != null && !isHeld(value)) {
+                if (distinctcount == MAXDISTINCT) {
+                    distinct = null;
+                } else {
+                    distinct[distinctcount++] = value;
+                }
+            }
+        }
+
+        private boolean isHeld(String value) {
+            for (int i = 0; i < distinctcount; i++) {
+                if (distinct[i].equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean mayContain(String value, boolean ignoringcase) {
+            if (distinct != null) {
+                for (int i = 0; i < distinctcount; i++) {
+                    if (ignoringcase ? distinct[i].equalsIgnoreCase(value) : distinct[i].equals(value)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return ignoringcase || value.compareTo(min) >= 0 && value.compareTo(max) <= 0;
+        }
+    }
+}
@@ -73,4 +73,13 @@ public class ExpressionList extends ArrayList<Operand> implements Operand {
     public String toString() {
         return "Expression List";
     }
+
+    @Override
+    public List<Operand<?>> getOperands() {
+        List<Operand<?>> operands = new ArrayList<>(size());
+        for (Operand<?> operand : this) {
+            operands.add(operand);
+        }
+        return operands;
+    }
 }
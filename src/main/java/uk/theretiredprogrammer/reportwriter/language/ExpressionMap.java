@@ -15,7 +15,9 @@
  */
 package uk.theretiredprogrammer.reportwriter.language;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
@@ -76,4 +78,13 @@ public class ExpressionMap extends HashMap<String, Operand> implements Operand {
     public String toString() {
         return "Expression Map";
     }
+
+    @Override
+    public List<Operand<?>> getOperands() {
+        List<Operand<?>> operands = new ArrayList<>(size());
+        for (Operand<?> operand : values()) {
+            operands.add(operand);
+        }
+        return operands;
+    }
 }
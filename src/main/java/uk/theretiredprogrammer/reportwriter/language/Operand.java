@@ -15,9 +15,15 @@
  */
 package uk.theretiredprogrammer.reportwriter.language;
 
+import java.util.List;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 
 public interface Operand<T> extends S_Token {
 
     public abstract T evaluate(DataRecord datarecord);
+
+    // the sub-expressions of this expression
+    public default List<Operand<?>> getOperands() {
+        return List.of();
+    }
 }
@@ -15,6 +15,7 @@
  */
 package uk.theretiredprogrammer.reportwriter.language;
 
+import java.util.List;
 import uk.theretiredprogrammer.reportwriter.RPTWTRException;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 
@@ -62,4 +63,9 @@ public class Property implements Operand {
     public String toString() {
         return name;
     }
+
+    @Override
+    public List<Operand<?>> getOperands() {
+        return List.of(expression);
+    }
 }
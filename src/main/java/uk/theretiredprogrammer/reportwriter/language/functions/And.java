@@ -15,10 +15,12 @@
  */
 package uk.theretiredprogrammer.reportwriter.language.functions;
 
+import java.util.List;
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
+import uk.theretiredprogrammer.reportwriter.language.Operand;
 import uk.theretiredprogrammer.reportwriter.language.OperandStack;
 import uk.theretiredprogrammer.reportwriter.language.OperatorStack;
 
@@ -43,4 +45,9 @@ public class And extends BooleanExpression {
     public Boolean evaluate(DataRecord datarecord) {
         return lhs.evaluate(datarecord) && rhs.evaluate(datarecord);
     }
+
+    @Override
+    public List<Operand<?>> getOperands() {
+        return List.of(lhs, rhs);
+    }
 }
@@ -15,12 +15,14 @@
  */
 package uk.theretiredprogrammer.reportwriter.language.functions;
 
+import java.util.List;
 import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
 import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
+import uk.theretiredprogrammer.reportwriter.language.Operand;
 import uk.theretiredprogrammer.reportwriter.language.OperandStack;
 import uk.theretiredprogrammer.reportwriter.language.OperatorStack;
 
@@ -51,4 +53,9 @@ public class CmdParamValue extends StringExpression {
         }
         return pval;
     }
+
+    @Override
+    public List<Operand<?>> getOperands() {
+        return List.of(expression);
+    }
 }
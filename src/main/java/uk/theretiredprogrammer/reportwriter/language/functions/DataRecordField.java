@@ -15,10 +15,13 @@
  */
 package uk.theretiredprogrammer.reportwriter.language.functions;
 
+import java.util.List;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
+import uk.theretiredprogrammer.reportwriter.datasource.Schema;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
+import uk.theretiredprogrammer.reportwriter.language.Operand;
 import uk.theretiredprogrammer.reportwriter.language.OperandStack;
 import uk.theretiredprogrammer.reportwriter.language.OperatorStack;
 
@@ -29,16 +32,62 @@ public class DataRecordField extends StringExpression {
         operandstack.push(new DataRecordField(DataTypes.isStringExpression(operandstack.pop())));
     }
 
+    // binds every literal field name in the expression to its column in schema
+    public static void bind(Operand<?> expression, Schema schema) {
+        if (expression instanceof DataRecordField field) {
+            field.bind(schema);
+        } else {
+            expression.getOperands().forEach(operand -> bind(operand, schema));
+        }
+    }
+
     private final StringExpression fieldnameexpression;
+    private volatile Slot slot;
 
     public DataRecordField(StringExpression fieldname) {
         super("Data field extraction");
         this.fieldnameexpression = fieldname;
     }
 
+    // a literal field name is read from its bound column; if a record has a
+    // different schema the field is bound again, to that record's schema
     @Override
     public String evaluate(DataRecord datarecord) {
+        if (fieldnameexpression instanceof StringLiteral) {
+            Slot bound = slot;
+            if (bound == null || bound.schema != datarecord.getSchema()) {
+                bound = bind(datarecord.getSchema());
+            }
+            return bound.column < 0 ? datarecord.get(fieldnameexpression.toString()) : datarecord.getField(bound.column);
+        }
         return datarecord.get(fieldnameexpression.evaluate(datarecord));
     }
 
+    private Slot bind(Schema schema) {
+        Slot bound = fieldnameexpression instanceof StringLiteral
+                ? new Slot(schema, schema.getColumn(fieldnameexpression.toString()))
+                : null;
+        slot = bound;
+        return bound;
+    }
+
+    public StringExpression getFieldNameExpression() {
+        return fieldnameexpression;
+    }
+
+    @Override
+    public List<Operand<?>> getOperands() {
+        return List.of(fieldnameexpression);
+    }
+
+    private static class Slot {
+
+        final Schema schema;
+        final int column;
+
+        Slot(Schema schema, int column) {
+            this.schema = schema;
+            this.column = column;
+        }
+    }
 }
@@ -15,11 +15,13 @@
  */
 package uk.theretiredprogrammer.reportwriter.language.functions;
 
+import java.util.List;
 import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
+import uk.theretiredprogrammer.reportwriter.language.Operand;
 import uk.theretiredprogrammer.reportwriter.language.OperandStack;
 import uk.theretiredprogrammer.reportwriter.language.OperatorStack;
 
@@ -41,4 +43,9 @@ public class EnvValue extends StringExpression {
     public String evaluate(DataRecord datarecord) {
         return Configuration.getDefault().getEnvironmentValue(expression.evaluate(datarecord));
     }
+
+    @Override
+    public List<Operand<?>> getOperands() {
+        return List.of(expression);
+    }
 }
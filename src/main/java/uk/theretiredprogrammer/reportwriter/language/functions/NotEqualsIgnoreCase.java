@@ -15,11 +15,13 @@
  */
 package uk.theretiredprogrammer.reportwriter.language.functions;
 
+import java.util.List;
 import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
 import uk.theretiredprogrammer.reportwriter.language.StringExpression;
 import uk.theretiredprogrammer.reportwriter.datasource.DataRecord;
 import uk.theretiredprogrammer.reportwriter.language.DataTypes;
 import uk.theretiredprogrammer.reportwriter.language.Language;
+import uk.theretiredprogrammer.reportwriter.language.Operand;
 import uk.theretiredprogrammer.reportwriter.language.OperandStack;
 import uk.theretiredprogrammer.reportwriter.language.OperatorStack;
 
@@ -44,4 +46,9 @@ public class NotEqualsIgnoreCase extends BooleanExpression {
     public Boolean evaluate(DataRecord datarecord) {
         return !(lhs.evaluate(datarecord).equalsIgnoreCase(rhs.evaluate(datarecord)));
     }
+
+    @Override
+    public List<Operand<?>> getOperands() {
+        return List.of(lhs, rhs);
+    }
 }
@@ -80,5 +80,12 @@ public class ReportDefinition2Test {
         } else {
             fail("reports is not a list");
         }
+        //
+        assertTrue(compiled.isNeeded("bookings"));
+        assertTrue(compiled.isNeeded("contacts"));
+        assertFalse(compiled.isNeeded("sorted"));
+        assertFalse(compiled.isNeeded("unused"));
+        assertTrue(compiled.getGeneratedDataStatementOrder().isEmpty());
+        assertEquals(1, compiled.getConsumerCount("contacts"));
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class ColumnTypeTest {
+
+    private static final String[] PARTS = {"0", "1", "9", "10", "007", "-", ".", "5", "2022", "-02-", "-30", "-29", "12", "+", "e", "", "99999999999"};
+
+    @Test
+    public void testInfer() {
+        System.out.println("column type - infer");
+        assertSame(ColumnType.DATE, ColumnType.infer("2022-02-28"));
+        assertSame(ColumnType.STRING, ColumnType.infer("2022-02-30"));
+        assertSame(ColumnType.STRING, ColumnType.infer("007"));
+        assertSame(ColumnType.STRING, ColumnType.infer("-0"));
+        assertSame(ColumnType.STRING, ColumnType.infer("1e5"));
+        assertSame(ColumnType.STRING, ColumnType.infer("123456789012345678"));
+        assertNotSame(ColumnType.STRING, ColumnType.infer("-0.50"));
+        assertNotSame(ColumnType.STRING, ColumnType.infer("12345678901234567"));
+        assertEquals(ColumnType.INVALID, ColumnType.infer("1.5").parse("1.50"));
+        assertEquals("10", ColumnType.infer("1.5").format(ColumnType.infer("1.5").parse("10")));
+        assertSame(ColumnType.infer("1.50"), ColumnType.infer("10").merge(ColumnType.infer("1.50")));
+        assertSame(ColumnType.STRING, ColumnType.infer("10").merge(ColumnType.DATE));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        System.out.println("column type - round trip");
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            StringBuilder value = new StringBuilder();
+            int parts = 1 + random.nextInt(4);
+            for (int j = 0; j < parts; j++) {
+                value.append(PARTS[random.nextInt(PARTS.length)]);
+            }
+            String v = value.toString();
+            ColumnType type = v.isEmpty() ? ColumnType.STRING : ColumnType.infer(v);
+            if (type != ColumnType.STRING) {
+                long parsed = type.parse(v);
+                assertNotEquals(ColumnType.INVALID, parsed, v);
+                assertEquals(v, type.format(parsed));
+                if (type != ColumnType.DATE) {
+                    assertEquals(0, new BigDecimal(v).unscaledValue().compareTo(BigDecimal.valueOf(parsed >> ColumnType.SCALEBITS).toBigInteger()), v);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testColumnOrder() {
+        System.out.println("column type - column order and reverting to strings");
+        String[] values = new String[Columns.SAMPLESIZE + 10];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = row % 7 == 0 ? "" : Integer.toString(values.length - row);
+        }
+        values[values.length - 1] = "n/a";
+        for (Columns columns : new Columns[]{new HeapColumns(2), new OffHeapColumns(2)}) {
+            for (int row = 0; row < values.length - 1; row++) {
+                columns.ensureCapacity(row + 1);
+                columns.set(0, row, values[row]);
+                columns.set(1, row, values[row]);
+            }
+            assertNotSame(ColumnType.STRING, columns.getType(0));
+            assertTrue(columns.compare(0, 1, 2) > 0);
+            assertTrue(columns.compare(0, 7, 1) < 0);
+            int row = values.length - 1;
+            columns.ensureCapacity(row + 1);
+            columns.set(0, row, values[row]);
+            columns.set(1, row, values[row]);
+            assertSame(ColumnType.STRING, columns.getType(0));
+            for (row = 0; row < values.length; row++) {
+                assertEquals(values[row], columns.get(0, row));
+                assertEquals(values[row], columns.get(1, row));
+            }
+        }
+    }
+
+    @Test
+    public void testDictionaryEncoding() {
+        System.out.println("column type - dictionary encoding and reverting to strings");
+        int rows = Dictionary.MAXSIZE + Columns.SAMPLESIZE * 2;
+        for (Columns columns : new Columns[]{new HeapColumns(1), new OffHeapColumns(1)}) {
+            for (int row = 0; row < rows; row++) {
+                columns.ensureCapacity(row + 1);
+                columns.set(0, row, value(row));
+                if (row == Columns.SAMPLESIZE) {
+                    assertNotNull(columns.getDictionary(0));
+                    assertSame(columns.get(0, 0), columns.get(0, 8));
+                }
+            }
+            assertNull(columns.getDictionary(0));
+            for (int row = 0; row < rows; row++) {
+                assertEquals(value(row), columns.get(0, row));
+            }
+        }
+    }
+
+    // a few values for the sample, then a new value on every row
+    private String value(int row) {
+        return row < Columns.SAMPLESIZE * 2 ? "v" + row % 8 : "n" + row;
+    }
+}
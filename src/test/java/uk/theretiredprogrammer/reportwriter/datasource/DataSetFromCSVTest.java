@@ -0,0 +1,462 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.theretiredprogrammer.reportwriter.RPTWTRException;
+import uk.theretiredprogrammer.reportwriter.RPTWTRRuntimeException;
+import uk.theretiredprogrammer.reportwriter.TestConfiguration;
+import uk.theretiredprogrammer.reportwriter.configuration.Configuration;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionMap;
+import uk.theretiredprogrammer.reportwriter.language.functions.DataRecordField;
+import uk.theretiredprogrammer.reportwriter.language.functions.Equals;
+import uk.theretiredprogrammer.reportwriter.language.functions.StringLiteral;
+
+public class DataSetFromCSVTest {
+
+    private static final List<String> HEADERS = List.of("Id", "Name", "Notes", "Amount");
+    private static final String[] CHARACTERS = {"a", "Z", "0", " ", ",", "\"", "\n", "é", "€", "😀"};
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void configure() {
+        try {
+            TestConfiguration.create("reportdefinition");
+        } catch (RPTWTRException ex) {
+            fail("Configuration Failure: " + ex.getLocalizedMessage());
+        }
+    }
+
+    // the test configuration, with a snapshot cache directory
+    private Path configureCache() {
+        Path cachedir = directory.resolve("cache");
+        try {
+            Configuration.create(new String[]{"-pd", "TESTRPTWTR", "-od", "output", "-dd", "TESTRPTWTR/Downloads",
+                "-cd", cachedir.toString(), "reportdefinition", "<undefined>"});
+        } catch (RPTWTRException ex) {
+            fail("Configuration Failure: " + ex.getLocalizedMessage());
+        }
+        return cachedir;
+    }
+
+    @Test
+    public void testStreamAcrossChunks() throws IOException {
+        System.out.println("CSV ingestion - stream across chunks");
+        Random random = new Random(1);
+        List<List<String>> records = randomRecords(random, 8000);
+        // a field longer than a chunk
+        records.get(100).set(2, "x".repeat(150000) + "\n\"" + "y".repeat(70000));
+        String csv = toCSV(random, records);
+        assertEquals(records, load(write("utf8.csv", csv, StandardCharsets.UTF_8, new byte[0])));
+        // a UTF-16 byte order mark sends the input through the character parser
+        assertEquals(records, load(write("utf16.csv", csv, StandardCharsets.UTF_16LE, new byte[]{(byte) 0xFF, (byte) 0xFE})));
+    }
+
+    @Test
+    public void testMapped() throws IOException {
+        System.out.println("CSV ingestion - mapped");
+        Random random = new Random(2);
+        for (int count : new int[]{0, 1, 5000}) {
+            List<List<String>> records = randomRecords(random, count);
+            Path file = write("mapped.csv", toCSV(random, records), StandardCharsets.UTF_8, new byte[0]);
+            assertEquals(records, load(file, "ingest", "mapped"));
+        }
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        System.out.println("CSV ingestion - parallel");
+        Random random = new Random(3);
+        // large enough to be split into several ranges, most splits falling
+        // within a quoted field
+        List<List<String>> records = randomRecords(random, 150000);
+        String text = toCSV(random, records);
+        Path file = write("parallel.csv", text, StandardCharsets.UTF_8, new byte[0]);
+        assertEquals(records, load(file, "ingest", "parallel"));
+        // and the splits were accepted, rather than parsed sequentially
+        try ( FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<List<String>> parsed = new ParallelCSVParser<>(channel, StandardCharsets.UTF_8, null, fields -> List.copyOf(fields))
+                    .parse(text.indexOf('\n') + 1);
+            assertEquals(records.subList(1, records.size()), parsed);
+        }
+        // quotes within unquoted fields upset the quote parity of the splits,
+        // so the ranges are rejected and the file parsed sequentially
+        StringBuilder csv = new StringBuilder("Id,Name,Notes,Amount\n");
+        List<List<String>> quoted = new ArrayList<>();
+        quoted.add(HEADERS);
+        for (int i = 0; i < 100000; i++) {
+            String notes = i % 7 == 0 ? "5\" long" : "plain";
+            csv.append(i).append(",\"a,\nb\",").append(notes).append(",1\n");
+            quoted.add(List.of(Integer.toString(i), "a,\nb", notes, "1"));
+        }
+        file = write("quoted.csv", csv.toString(), StandardCharsets.UTF_8, new byte[0]);
+        assertEquals(quoted, load(file, "ingest", "parallel"));
+    }
+
+    @Test
+    public void testParallelLineEndings() throws IOException {
+        System.out.println("CSV ingestion - parallel with CR and CRLF line endings");
+        Random random = new Random(9);
+        List<List<String>> records = randomRecords(random, 80000);
+        String csv = toCSV(random, records).replace("\r\n", "\n");
+        for (String lineending : new String[]{"\r", "\r\n"}) {
+            String text = csv.replace("\n", lineending);
+            Path file = write("lineendings.csv", text, StandardCharsets.UTF_8, new byte[0]);
+            assertEquals(records, load(file, "ingest", "parallel"));
+            // the file is split, at the end of a line ending, and the splits are accepted
+            String name = lineending.length() == 1 ? "CR" : "CRLF";
+            try ( FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ParallelCSVParser<List<String>> parser = new ParallelCSVParser<>(channel, StandardCharsets.UTF_8, null, fields -> List.copyOf(fields));
+                int from = text.indexOf(lineending) + lineending.length();
+                List<Long> boundaries = parser.getBoundaries(from);
+                assertTrue(boundaries.size() > 2, name);
+                byte[] bytes = Files.readAllBytes(file);
+                for (long boundary : boundaries.subList(1, boundaries.size() - 1)) {
+                    assertEquals(lineending.charAt(lineending.length() - 1), bytes[(int) boundary - 1], name);
+                }
+                assertEquals(records.subList(1, records.size()), parser.parse(from), name);
+            }
+        }
+    }
+
+    @Test
+    public void testByteParsersMatchCharacterParser() throws IOException {
+        System.out.println("CSV ingestion - byte parsers match the character parser");
+        Random random = new Random(4);
+        for (int i = 0; i < 200; i++) {
+            List<List<String>> records = randomRecords(random, random.nextInt(40));
+            String csv = toCSV(random, records);
+            List<List<String>> expected = load(write("chars.csv", csv, StandardCharsets.UTF_16BE, new byte[]{(byte) 0xFE, (byte) 0xFF}));
+            assertEquals(records, expected);
+            Path file = write("bytes.csv", csv, StandardCharsets.UTF_8, new byte[0]);
+            for (String ingest : new String[]{"stream", "mapped", "parallel"}) {
+                assertEquals(expected, load(file, "ingest", ingest), ingest);
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        System.out.println("CSV ingestion - snapshot cache");
+        Path cachedir = configureCache();
+        Random random = new Random(5);
+        List<List<String>> records = randomRecords(random, 3000);
+        String csv = toCSV(random, records);
+        Path file = write("snapshot.csv", csv, StandardCharsets.UTF_8, new byte[0]);
+        assertEquals(records, load(file, "ingest", "parallel"));
+        List<Path> snapshots = list(cachedir);
+        assertEquals(1, snapshots.size());
+        Path snapshot = snapshots.get(0);
+        assertEquals(records, load(file));
+        // rewritten with the same size and modified time - the snapshot is still used
+        FileTime modified = Files.getLastModifiedTime(file);
+        List<List<String>> changed = records.stream()
+                .map(record -> record.stream().map(field -> field.replace('b', 'c')).toList())
+                .toList();
+        write("snapshot.csv", csv.replace('b', 'c'), StandardCharsets.UTF_8, new byte[0]);
+        Files.setLastModifiedTime(file, modified);
+        assertEquals(records, load(file));
+        // a changed modified time makes a new snapshot
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 2000));
+        assertEquals(changed, load(file, "ingest", "mapped"));
+        assertEquals(changed, load(file));
+        // an unreadable snapshot is replaced
+        Files.writeString(snapshot, "not a snapshot");
+        assertEquals(changed, load(file));
+        assertEquals(changed, load(file));
+        assertEquals(snapshots, list(cachedir));
+        assertNotEquals("not a snapshot", new String(Files.readAllBytes(snapshot), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testSnapshotCharset() throws IOException {
+        System.out.println("CSV ingestion - snapshot cache with a changed charset");
+        List<List<String>> latin1records = List.of(HEADERS, List.of("1", "café", "£5", "ß"));
+        List<List<String>> utf8records = List.of(HEADERS, List.of("1", "caf\uFFFD", "\uFFFD5", "\uFFFD"));
+        Path file = write("charset.csv", "Id,Name,Notes,Amount\n1,café,£5,ß\n", StandardCharsets.ISO_8859_1, new byte[0]);
+        assertEquals(utf8records, load(file, "charset", "UTF-8"));
+        Path cachedir = configureCache();
+        assertEquals(latin1records, load(file, "charset", "ISO-8859-1"));
+        assertEquals(utf8records, load(file, "charset", "UTF-8"));
+        // each charset has its own snapshot
+        assertEquals(latin1records, load(file, "charset", "ISO-8859-1"));
+        assertEquals(utf8records, load(file, "charset", "UTF-8"));
+        assertEquals(2, list(cachedir).size());
+    }
+
+    @Test
+    public void testSnapshotColumns() throws IOException {
+        System.out.println("CSV ingestion - snapshot of typed, encoded and string columns");
+        Random random = new Random(8);
+        StringBuilder csv = new StringBuilder("Id,Type,Name,Amount,Date\n");
+        for (int i = 0; i < 10000; i++) {
+            csv.append(i).append(",T").append(random.nextInt(5)).append(",n").append(random.nextInt(5000))
+                    .append(',').append(random.nextInt(10) == 0 ? "" : random.nextInt(100) + (i % 3 == 0 ? "" : "." + random.nextInt(100)))
+                    .append(",2022-").append(10 + random.nextInt(3)).append('-').append(10 + random.nextInt(19)).append('\n');
+        }
+        Path file = write("columns.csv", csv.toString(), StandardCharsets.UTF_8, new byte[0]);
+        StoredDataSet parsed = create(file, null, null);
+        Path cachedir = configureCache();
+        assertEquals(records(parsed), records(create(file, null, null)));
+        assertEquals(1, list(cachedir).size());
+        // rewritten with the same size and modified time - the snapshot is still used
+        FileTime modified = Files.getLastModifiedTime(file);
+        write("columns.csv", csv.toString().replace('n', 'm'), StandardCharsets.UTF_8, new byte[0]);
+        Files.setLastModifiedTime(file, modified);
+        StoredDataSet snapshot = create(file, null, null, "storage", "offheap");
+        assertEquals(records(parsed), records(snapshot));
+        ExpressionList sortfields = new ExpressionList();
+        sortfields.add(new StringLiteral("Amount"));
+        sortfields.add(new StringLiteral("Date"));
+        assertEquals(TestDataSets.values(parsed.createSortedDataRecordCursor(sortfields).getStream(), "Id"),
+                TestDataSets.values(snapshot.createSortedDataRecordCursor(sortfields).getStream(), "Id"));
+        String[][] values = {{"0", "9999", "10000"}, {"T0", "T4", "T5"}, {"n0", "n4999", "n5000"}, {"", "5", "5.5"}, {"2022-10-10", "2022-12-28"}};
+        for (int column = 0; column < values.length; column++) {
+            assertSame(parsed.getColumns().getType(column), snapshot.getColumns().getType(column));
+            assertEquals(parsed.getColumns().getDictionary(column) == null, snapshot.getColumns().getDictionary(column) == null);
+            for (String value : values[column]) {
+                assertArrayEquals(parsed.findRows(column, value, false).stream().toArray(), snapshot.findRows(column, value, false).stream().toArray());
+            }
+        }
+        assertNotSame(ColumnType.STRING, snapshot.getColumns().getType(3));
+        assertNotNull(snapshot.getColumns().getDictionary(1));
+        // only the fields wanted are read from the snapshot
+        BooleanExpression filter = new Equals(new DataRecordField(new StringLiteral("Type")), new StringLiteral("T3"));
+        List<List<String>> expected = new ArrayList<>();
+        expected.add(List.of("Type", "Amount"));
+        parsed.getStream().filter(record -> record.get("Type").equals("T3"))
+                .forEach(record -> expected.add(List.of(record.get("Type"), record.get("Amount"))));
+        assertEquals(expected, load(file, Set.of("Type", "Amount"), filter));
+    }
+
+    @Test
+    public void testProjectedAndFiltered() throws IOException {
+        System.out.println("CSV ingestion - projected and filtered while loading");
+        Random random = new Random(6);
+        List<List<String>> records = randomRecords(random, 60000);
+        String csv = toCSV(random, records);
+        Set<String> fields = Set.of("Id", "Notes", "Amount");
+        BooleanExpression filter = new Equals(new DataRecordField(new StringLiteral("Amount")), new StringLiteral(""));
+        List<List<String>> expected = new ArrayList<>();
+        expected.add(List.of("Id", "Notes", "Amount"));
+        records.stream().skip(1)
+                .filter(record -> record.get(3).isEmpty())
+                .forEach(record -> expected.add(List.of(record.get(0), record.get(2), record.get(3))));
+        Path file = write("filtered.csv", csv, StandardCharsets.UTF_8, new byte[0]);
+        for (String ingest : new String[]{"stream", "mapped", "parallel"}) {
+            assertEquals(expected, load(file, fields, filter, "ingest", ingest), ingest);
+        }
+        Path utf16file = write("filtered16.csv", csv, StandardCharsets.UTF_16LE, new byte[]{(byte) 0xFF, (byte) 0xFE});
+        assertEquals(expected, load(utf16file, fields, filter));
+        // a snapshot holds the full records, whether or not it was written by a filtered load
+        configureCache();
+        assertEquals(expected, load(file, fields, filter));
+        assertEquals(expected, load(file, fields, filter, "ingest", "parallel"));
+        assertEquals(records, load(file));
+    }
+
+    @Test
+    public void testCompressed() throws IOException {
+        System.out.println("CSV ingestion - gzip and zip");
+        Random random = new Random(7);
+        List<List<String>> records = randomRecords(random, 20000);
+        byte[] csv = toCSV(random, records).getBytes(StandardCharsets.UTF_8);
+        Path gzip = directory.resolve("export.csv.gz");
+        try ( OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            out.write(csv);
+        }
+        assertEquals(records, load(gzip));
+        // recognised by its magic number, and streamed whatever the ingest mode
+        assertEquals(records, load(Files.copy(gzip, directory.resolve("export.dat")), "ingest", "parallel"));
+        // several entries, appended in order unless one is selected
+        List<List<String>> records2 = randomRecords(random, 500);
+        List<List<String>> appended = new ArrayList<>(records);
+        appended.addAll(records2.subList(1, records2.size()));
+        Path zip = directory.resolve("export.zip");
+        try ( ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            addEntry(out, "first.csv", csv);
+            addEntry(out, "readme.txt", "not a csv file".getBytes(StandardCharsets.UTF_8));
+            addEntry(out, "data/", new byte[0]);
+            addEntry(out, "data/second.CSV", toCSV(random, records2).getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(appended, load(zip));
+        assertEquals(records2, load(zip, "entry", "data/second.CSV"));
+        assertEquals(appended.stream().map(record -> List.of(record.get(0), record.get(3))).toList(),
+                load(Files.copy(zip, directory.resolve("export")), Set.of("Id", "Amount"), null));
+        assertThrows(RPTWTRRuntimeException.class, () -> load(zip, "entry", "third.csv"));
+        // appended entries must have the same headers
+        Path mismatched = directory.resolve("mismatched.zip");
+        try ( ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(mismatched))) {
+            addEntry(out, "first.csv", csv);
+            addEntry(out, "second.csv", "Id,Name\n1,a\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertThrows(RPTWTRRuntimeException.class, () -> load(mismatched));
+    }
+
+    @Test
+    public void testByteOrderMarksAndCharsets() throws IOException {
+        System.out.println("CSV ingestion - byte order marks and charsets");
+        Random random = new Random(8);
+        List<List<String>> records = randomRecords(random, 5000);
+        String csv = toCSV(random, records);
+        byte[] utf8bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+        // characters outside ISO-8859-1 are replaced
+        List<List<String>> latin1records = records.stream()
+                .map(record -> record.stream().map(field -> field.replace("€", "£").replace("😀", "ß")).toList())
+                .toList();
+        String latin1csv = csv.replace("€", "£").replace("😀", "ß");
+        Path utf8file = write("bom.csv", csv, StandardCharsets.UTF_8, utf8bom);
+        Path latin1file = write("latin1.csv", latin1csv, StandardCharsets.ISO_8859_1, new byte[0]);
+        Path utf16file = write("utf16.csv", csv, StandardCharsets.UTF_16BE, new byte[0]);
+        Path utf16bomfile = write("utf16bom.csv", csv, StandardCharsets.UTF_16LE, new byte[]{(byte) 0xFF, (byte) 0xFE});
+        for (String ingest : new String[]{"stream", "mapped", "parallel"}) {
+            assertEquals(records, load(utf8file, "ingest", ingest), ingest);
+            // a byte order mark overrides the charset
+            assertEquals(records, load(utf8file, "ingest", ingest, "charset", "ISO-8859-1"), ingest);
+            assertEquals(latin1records, load(latin1file, "ingest", ingest, "charset", "ISO-8859-1"), ingest);
+            assertNotEquals(latin1records, load(latin1file, "ingest", ingest, "charset", "UTF-8"), ingest);
+            // not ASCII compatible, so decoded to characters
+            assertEquals(records, load(utf16file, "ingest", ingest, "charset", "UTF-16BE"), ingest);
+            assertEquals(records, load(utf16bomfile, "ingest", ingest, "charset", "ISO-8859-1"), ingest);
+        }
+        assertEquals(List.of(HEADERS), load(write("header.csv", "Id,Name,Notes,Amount", StandardCharsets.UTF_8, utf8bom), "ingest", "parallel"));
+    }
+
+    private void addEntry(ZipOutputStream out, String name, byte[] bytes) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private List<Path> list(Path dir) throws IOException {
+        try ( Stream<Path> paths = Files.list(dir)) {
+            return paths.toList();
+        }
+    }
+
+    private Path write(String filename, String csv, Charset charset, byte[] bom) throws IOException {
+        byte[] text = csv.getBytes(charset);
+        byte[] bytes = new byte[bom.length + text.length];
+        System.arraycopy(bom, 0, bytes, 0, bom.length);
+        System.arraycopy(text, 0, bytes, bom.length, text.length);
+        return Files.write(directory.resolve(filename), bytes);
+    }
+
+    private List<List<String>> load(Path file, String... parameters) {
+        return load(file, null, null, parameters);
+    }
+
+    // the header record and the data records of the file, as loaded
+    private List<List<String>> load(Path file, Set<String> fields, BooleanExpression filter, String... parameters) {
+        return records(create(file, fields, filter, parameters));
+    }
+
+    private StoredDataSet create(Path file, Set<String> fields, BooleanExpression filter, String... parameters) {
+        ExpressionMap parametermap = new ExpressionMap();
+        parametermap.put("match", new StringLiteral("full"));
+        parametermap.put("path", new StringLiteral(file.toString()));
+        for (int i = 0; i < parameters.length; i += 2) {
+            parametermap.put(parameters[i], new StringLiteral(parameters[i + 1]));
+        }
+        return DataSetFromCSV.create("test", parametermap, fields, filter);
+    }
+
+    private List<List<String>> records(StoredDataSet dataset) {
+        List<String> headers = dataset.getHeaders();
+        List<List<String>> records = new ArrayList<>();
+        records.add(headers);
+        dataset.getStream().forEach(record -> records.add(headers.stream().map(record::get).toList()));
+        return records;
+    }
+
+    // a header record and count data records of random fields, which may hold
+    // commas, quotes, line breaks, spaces and multibyte characters
+    private List<List<String>> randomRecords(Random random, int count) {
+        List<List<String>> records = new ArrayList<>();
+        records.add(HEADERS);
+        for (int i = 0; i < count; i++) {
+            List<String> fields = new ArrayList<>();
+            fields.add(Integer.toString(i));
+            for (int j = 1; j < HEADERS.size(); j++) {
+                fields.add(randomField(random));
+            }
+            records.add(fields);
+        }
+        return records;
+    }
+
+    private String randomField(Random random) {
+        StringBuilder field = new StringBuilder();
+        int length = random.nextInt(random.nextInt(4) == 0 ? 40 : 8);
+        int sparseness = 1 + random.nextInt(CHARACTERS.length);
+        for (int i = 0; i < length; i++) {
+            field.append(random.nextInt(sparseness) == 0 ? CHARACTERS[random.nextInt(CHARACTERS.length)] : "b");
+        }
+        return field.toString();
+    }
+
+    // fields are quoted when they must be, and at random otherwise; line
+    // endings (including those within quoted fields) are LF or CRLF at random,
+    // and the last record may have none
+    private String toCSV(Random random, List<List<String>> records) {
+        StringBuilder csv = new StringBuilder();
+        String lineending = "";
+        for (List<String> record : records) {
+            for (int i = 0; i < record.size(); i++) {
+                if (i > 0) {
+                    csv.append(',');
+                }
+                String field = record.get(i);
+                if (field.startsWith(" ") || field.contains(",") || field.contains("\"") || field.contains("\n") || random.nextInt(8) == 0) {
+                    String linebreak = random.nextBoolean() ? "\n" : "\r\n";
+                    csv.append('"').append(field.replace("\"", "\"\"").replace("\n", linebreak)).append('"');
+                } else {
+                    csv.append(field);
+                }
+            }
+            lineending = random.nextBoolean() ? "\n" : "\r\n";
+            csv.append(lineending);
+        }
+        if (random.nextBoolean()) {
+            csv.setLength(csv.length() - lineending.length());
+        }
+        return csv.toString();
+    }
+}
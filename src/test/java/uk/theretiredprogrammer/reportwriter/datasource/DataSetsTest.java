@@ -0,0 +1,50 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class DataSetsTest {
+
+    @Test
+    public void testConsumed() {
+        System.out.println("datasets - consumed");
+        DataSets datasets = new DataSets();
+        StoredDataSet loaded = TestDataSets.create(List.of("Name"), 2, row -> List.of(row == 0 ? "a" : "b"));
+        StoredDataSet generated = TestDataSets.view(loaded, record -> record.get("Name").equals("b"));
+        datasets.setConsumerCount("loaded", 2);
+        datasets.setConsumerCount("generated", 1);
+        datasets.setConsumerCount("unused", 0);
+        datasets.saveDataSet("loaded", loaded);
+        datasets.saveDataSet("generated", generated);
+        datasets.saveDataSet("unused", new StoredDataSet(List.of("Name")));
+        datasets.saveDataSet("uncounted", new StoredDataSet(List.of("Name")));
+        assertNull(datasets.getDataSet("unused"));
+        datasets.consumed("loaded");
+        assertSame(loaded, datasets.getDataSet("loaded"));
+        assertTrue(generated.isView());
+        datasets.consumed("loaded");
+        assertNull(datasets.getDataSet("loaded"));
+        assertFalse(generated.isView());
+        assertEquals("b", generated.getDataRecord(0).get("Name"));
+        datasets.consumed("generated");
+        assertNull(datasets.getDataSet("generated"));
+        datasets.consumed("uncounted");
+        assertNotNull(datasets.getDataSet("uncounted"));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class DelimiterSearchTest {
+
+    private static final byte[] ALPHABET = {'a', ',', '"', '\n', '\r', ' ', (byte) 0x80, (byte) 0xE2, 0x01, (byte) 0xFF};
+
+    @Test
+    public void testIndexOfAny() {
+        System.out.println("delimiter search - indexOfAny");
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            ByteBuffer buffer = randomBuffer(random);
+            int from = random.nextInt(buffer.capacity() + 1);
+            int limit = from + random.nextInt(buffer.capacity() - from + 1);
+            assertEquals(naiveIndexOfAny(buffer, from, limit), DelimiterSearch.indexOfAny(buffer, from, limit, (byte) ',', (byte) '\n', (byte) '\r'));
+        }
+    }
+
+    @Test
+    public void testCount() {
+        System.out.println("delimiter search - count");
+        Random random = new Random(2);
+        for (int i = 0; i < 2000; i++) {
+            ByteBuffer buffer = randomBuffer(random);
+            int expected = 0;
+            for (int j = 0; j < buffer.capacity(); j++) {
+                if (buffer.get(j) == '"') {
+                    expected++;
+                }
+            }
+            assertEquals(expected, DelimiterSearch.count(buffer, 0, buffer.capacity(), (byte) '"'));
+        }
+    }
+
+    private ByteBuffer randomBuffer(Random random) {
+        byte[] bytes = new byte[random.nextInt(40)];
+        int sparseness = 1 + random.nextInt(ALPHABET.length);
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = random.nextInt(sparseness) == 0 ? ALPHABET[random.nextInt(ALPHABET.length)] : (byte) 'x';
+        }
+        return ByteBuffer.wrap(bytes).order(random.nextBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private int naiveIndexOfAny(ByteBuffer buffer, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == ',' || b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return limit;
+    }
+}
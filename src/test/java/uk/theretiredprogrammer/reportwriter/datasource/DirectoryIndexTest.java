@@ -0,0 +1,50 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DirectoryIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testLatestStartingWith() throws IOException {
+        System.out.println("directory index - latest starting with");
+        Path older = Files.writeString(directory.resolve("contacts-1.csv"), "a");
+        Path newer = Files.writeString(directory.resolve("contacts-2.csv"), "b");
+        Files.writeString(directory.resolve("other.csv"), "c");
+        Files.setLastModifiedTime(older, FileTime.fromMillis(1_000_000_000_000L));
+        Files.setLastModifiedTime(newer, FileTime.fromMillis(1_100_000_000_000L));
+        FileTime directorytime = Files.getLastModifiedTime(directory);
+        assertEquals(newer.toFile(), DirectoryIndex.get(directory.toFile()).getLatestStartingWith("contacts"));
+        assertNull(DirectoryIndex.get(directory.toFile()).getLatestStartingWith("bookings"));
+        // rewritten in place - the directory's modified time is unchanged
+        Files.setLastModifiedTime(older, FileTime.fromMillis(1_200_000_000_000L));
+        assertEquals(older.toFile(), DirectoryIndex.get(directory.toFile()).getLatestStartingWith("contacts"));
+        // deleted, with the directory's modified time put back to keep the index
+        Files.delete(older);
+        Files.setLastModifiedTime(directory, directorytime);
+        assertEquals(newer.toFile(), DirectoryIndex.get(directory.toFile()).getLatestStartingWith("contacts"));
+    }
+}
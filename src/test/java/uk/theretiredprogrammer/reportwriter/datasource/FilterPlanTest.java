@@ -0,0 +1,98 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import uk.theretiredprogrammer.reportwriter.language.BooleanExpression;
+import uk.theretiredprogrammer.reportwriter.language.StringExpression;
+import uk.theretiredprogrammer.reportwriter.language.functions.And;
+import uk.theretiredprogrammer.reportwriter.language.functions.DataRecordField;
+import uk.theretiredprogrammer.reportwriter.language.functions.Equals;
+import uk.theretiredprogrammer.reportwriter.language.functions.EqualsIgnoreCase;
+import uk.theretiredprogrammer.reportwriter.language.functions.Not;
+import uk.theretiredprogrammer.reportwriter.language.functions.NotEquals;
+import uk.theretiredprogrammer.reportwriter.language.functions.Or;
+import uk.theretiredprogrammer.reportwriter.language.functions.StringLiteral;
+
+public class FilterPlanTest {
+
+    private static final String[] FIELDS = {"Type", "Status", "Amount"};
+    private static final String[][] VALUES = {{"Racing", "racing", "Social", "Cruising"}, {"A", "B", "b", ""}, {"1", "2", "10", "2.5"}};
+
+    @Test
+    public void testFilteredCursor() {
+        System.out.println("filter plan - filtered cursor");
+        Random random = new Random(1);
+        StoredDataSet dataset = TestDataSets.create(List.of("Id", "Type", "Status", "Amount"), 5000,
+                row -> List.of(Integer.toString(row), value(random, 0), value(random, 1), value(random, 2)));
+        StoredDataSet view = TestDataSets.view(dataset, record -> !record.get("Type").equals("Social"));
+        for (int i = 0; i < 300; i++) {
+            BooleanExpression filter = randomFilter(random, 3);
+            assertFiltered(dataset, filter);
+            assertFiltered(view, filter);
+        }
+    }
+
+    @Test
+    public void testNegatedFilterWholeWords() {
+        System.out.println("filter plan - negated filter on whole words of rows");
+        for (int rowcount : new int[]{64, 128, 4096}) {
+            StoredDataSet dataset = TestDataSets.create(List.of("Id", "Type"), rowcount,
+                    row -> List.of(Integer.toString(row), row % 3 == 0 ? "X" : "Y"));
+            StringExpression type = new DataRecordField(new StringLiteral("Type"));
+            for (BooleanExpression filter : new BooleanExpression[]{new NotEquals(type, new StringLiteral("X")),
+                new Not(new Equals(type, new StringLiteral("X"))), new NotEquals(type, new StringLiteral("Z"))}) {
+                assertFiltered(dataset, filter);
+            }
+        }
+    }
+
+    // the filtered cursor gives the records which pass the filter, in order
+    private void assertFiltered(StoredDataSet dataset, BooleanExpression filter) {
+        assertEquals(TestDataSets.values(dataset.getStream().filter(record -> filter.evaluate(record)), "Id"),
+                TestDataSets.values(dataset.createDataRecordCursor(filter).getStream(), "Id"));
+    }
+
+    private String value(Random random, int field) {
+        return VALUES[field][random.nextInt(VALUES[field].length)];
+    }
+
+    private BooleanExpression randomFilter(Random random, int depth) {
+        int choice = random.nextInt(depth == 0 ? 4 : 7);
+        int field = random.nextInt(FIELDS.length);
+        StringExpression fieldvalue = new DataRecordField(new StringLiteral(FIELDS[field]));
+        StringExpression constant = new StringLiteral(value(random, field));
+        return switch (choice) {
+            case 0 ->
+                new Equals(fieldvalue, constant);
+            case 1 ->
+                new Equals(constant, fieldvalue);
+            case 2 ->
+                new EqualsIgnoreCase(fieldvalue, constant);
+            case 3 ->
+                new NotEquals(fieldvalue, constant);
+            case 4 ->
+                new And(randomFilter(random, depth - 1), randomFilter(random, depth - 1));
+            case 5 ->
+                new Or(randomFilter(random, depth - 1), randomFilter(random, depth - 1));
+            default ->
+                new Not(randomFilter(random, depth - 1));
+        };
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class OffHeapColumnsTest {
+
+    @Test
+    public void testSetAndGet() {
+        System.out.println("off heap columns - set and get");
+        Random random = new Random(1);
+        int rows = 20000;
+        String[][] expected = new String[3][rows];
+        OffHeapColumns columns = new OffHeapColumns(3);
+        for (int row = 0; row < rows; row++) {
+            columns.ensureCapacity(row + 1);
+            for (int column = 0; column < 3; column++) {
+                String value = randomValue(random);
+                expected[column][row] = value;
+                columns.set(column, row, value);
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < 3; column++) {
+                assertEquals(expected[column][row], columns.get(column, row));
+            }
+        }
+    }
+
+    @Test
+    public void testLongValue() {
+        System.out.println("off heap columns - value longer than a chunk");
+        String value = "x".repeat((1 << 24) + 10);
+        OffHeapColumns columns = new OffHeapColumns(1);
+        columns.ensureCapacity(3);
+        columns.set(0, 0, "before");
+        columns.set(0, 1, value);
+        columns.set(0, 2, "after");
+        assertEquals("before", columns.get(0, 0));
+        assertEquals(value, columns.get(0, 1));
+        assertEquals("after", columns.get(0, 2));
+    }
+
+    private String randomValue(Random random) {
+        return switch (random.nextInt(5)) {
+            case 0 ->
+                null;
+            case 1 ->
+                "";
+            case 2 ->
+                "café €" + random.nextInt();
+            default ->
+                "v".repeat(random.nextInt(300));
+        };
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.BitSet;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class RowBitmapTest {
+
+    // whole words, whole chunks and part filled words and chunks
+    private static final int[] ROWCOUNTS = {64, 128, 100, 4096, 65536, 2 * 65536, 2 * 65536 + 100};
+
+    @Test
+    public void testCombinations() {
+        System.out.println("row bitmap - combinations");
+        Random random = new Random(1);
+        for (int rowcount : ROWCOUNTS) {
+            for (int i = 0; i < 20; i++) {
+                BitSet bits1 = randomBits(random, rowcount);
+                BitSet bits2 = randomBits(random, rowcount);
+                RowBitmap bitmap1 = RowBitmap.of(rowcount, bits1.stream().toArray());
+                RowBitmap bitmap2 = RowBitmap.of(rowcount, bits2.stream().toArray());
+                assertRows(bits1, bitmap1, rowcount);
+                BitSet and = (BitSet) bits1.clone();
+                and.and(bits2);
+                assertRows(and, bitmap1.and(bitmap2), rowcount);
+                BitSet or = (BitSet) bits1.clone();
+                or.or(bits2);
+                assertRows(or, bitmap1.or(bitmap2), rowcount);
+                BitSet not = (BitSet) bits1.clone();
+                not.flip(0, rowcount);
+                assertRows(not, bitmap1.not(), rowcount);
+                assertRows(bits1, bitmap1.not().not(), rowcount);
+            }
+        }
+    }
+
+    @Test
+    public void testNot() {
+        System.out.println("row bitmap - not");
+        for (int rowcount : ROWCOUNTS) {
+            assertEquals(rowcount, new RowBitmap(rowcount).not().stream().count());
+            assertEquals(rowcount - 1, RowBitmap.of(rowcount, new int[]{rowcount - 1}).not().stream().count());
+            assertEquals(0, new RowBitmap(rowcount).not().not().stream().count());
+        }
+    }
+
+    // each chunk is empty, full, sparse or dense
+    private BitSet randomBits(Random random, int rowcount) {
+        BitSet bits = new BitSet(rowcount);
+        for (int start = 0; start < rowcount; start += 65536) {
+            int end = Math.min(start + 65536, rowcount);
+            int kind = random.nextInt(4);
+            for (int row = start; row < end; row++) {
+                if (kind == 1 || kind == 2 && random.nextInt(1000) == 0 || kind == 3 && random.nextBoolean()) {
+                    bits.set(row);
+                }
+            }
+        }
+        return bits;
+    }
+
+    private void assertRows(BitSet expected, RowBitmap actual, int rowcount) {
+        assertArrayEquals(expected.stream().toArray(), actual.stream().toArray());
+        for (int row = 0; row < rowcount; row += 97) {
+            assertEquals(expected.get(row), actual.contains(row));
+        }
+    }
+}
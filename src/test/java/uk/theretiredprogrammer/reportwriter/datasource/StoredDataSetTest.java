@@ -0,0 +1,115 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import uk.theretiredprogrammer.reportwriter.language.ExpressionList;
+import uk.theretiredprogrammer.reportwriter.language.functions.StringLiteral;
+
+public class StoredDataSetTest {
+
+    private static final Comparator<DataRecord> REVERSENAME = (r1, r2) -> r2.get("Name").compareTo(r1.get("Name"));
+
+    @Test
+    public void testView() {
+        System.out.println("stored dataset - views");
+        String[][] rows = {{"a", "10"}, {"b", "9"}, {"c", "11"}};
+        StoredDataSet dataset = TestDataSets.create(List.of("Name", "Amount"), rows.length, row -> List.of(rows[row]));
+        StoredDataSet filtered = TestDataSets.view(dataset, record -> !record.get("Name").equals("c"));
+        assertTrue(filtered.isView());
+        assertEquals(List.of("a", "b"), names(filtered));
+        StoredDataSet reversed = TestDataSets.view(filtered, record -> true, REVERSENAME);
+        assertTrue(reversed.isView());
+        assertEquals(List.of("b", "a"), names(reversed));
+        reversed.insertDataRecord(List.of("d", "1"));
+        assertFalse(reversed.isView());
+        assertEquals(List.of("b", "a", "d"), names(reversed));
+        filtered.materialize();
+        assertFalse(filtered.isView());
+        assertEquals(List.of("a", "b"), names(filtered));
+        assertEquals("9", filtered.getDataRecord(1).get("Amount"));
+        assertEquals(3, dataset.size());
+    }
+
+    @Test
+    public void testSortedCursor() {
+        System.out.println("stored dataset - sorted cursor");
+        Random random = new Random(1);
+        StoredDataSet dataset = TestDataSets.create(List.of("Id", "Name", "Amount"), 3000,
+                row -> List.of(Integer.toString(row), "n" + random.nextInt(50), random.nextInt(20) + "." + random.nextInt(10)));
+        ExpressionList sortfields = new ExpressionList();
+        sortfields.add(new StringLiteral("Amount"));
+        sortfields.add(new StringLiteral("Name"));
+        StoredDataSet view = TestDataSets.view(dataset, record -> !record.get("Name").endsWith("7"));
+        for (StoredDataSet source : new StoredDataSet[]{dataset, view}) {
+            DataSetStream stream = source.createDataRecordStream();
+            List<String> expected = TestDataSets.values(stream.sort(sortfields), "Id");
+            for (int i = 0; i < 2; i++) {
+                assertEquals(expected, TestDataSets.values(source.createSortedDataRecordCursor(sortfields).getStream(), "Id"));
+            }
+        }
+    }
+
+    @Test
+    public void testSortMixedScales() {
+        System.out.println("stored dataset - sort a column of mixed scales");
+        Random random = new Random(1);
+        // whole numbers and one or two decimal places in the sample; four places later on
+        List<String> amounts = IntStream.range(0, 3000).mapToObj(row -> row % 50 == 0 ? ""
+                : (random.nextBoolean() ? "-" : "") + (1 + random.nextInt(20))
+                + (row % 3 == 0 ? "" : "." + random.nextInt(row < 2000 ? 100 : 10000))).toList();
+        StoredDataSet dataset = TestDataSets.create(List.of("Amount"), amounts.size(), row -> List.of(amounts.get(row)));
+        ExpressionList sortfields = new ExpressionList();
+        sortfields.add(new StringLiteral("Amount"));
+        Comparator<String> numeric = (a1, a2) -> a1.isEmpty() || a2.isEmpty()
+                ? Boolean.compare(!a1.isEmpty(), !a2.isEmpty()) : new BigDecimal(a1).compareTo(new BigDecimal(a2));
+        List<String> expected = amounts.stream().sorted(numeric.thenComparing(Comparator.naturalOrder())).toList();
+        assertEquals(expected, TestDataSets.values(dataset.createDataRecordStream().sort(sortfields), "Amount"));
+        assertEquals(expected, TestDataSets.values(dataset.createSortedDataRecordCursor(sortfields).getStream(), "Amount"));
+    }
+
+    @Test
+    public void testFindRows() {
+        System.out.println("stored dataset - find rows");
+        StoredDataSet dataset = TestDataSets.create(List.of("Id", "Name", "Type"), 20000,
+                row -> List.of(Integer.toString(row), "n" + row / 3, "T" + row / 5000));
+        StoredDataSet view = TestDataSets.view(dataset, record -> !record.get("Id").endsWith("1"), REVERSENAME);
+        String[][] values = {{"0", "12345", "19999", "20000", "007"}, {"n0", "n4000", "N4000", "n6666", "n7000"}, {"T0", "T3", "t3", "T4"}};
+        for (StoredDataSet source : new StoredDataSet[]{dataset, view}) {
+            for (int column = 0; column < values.length; column++) {
+                for (String value : values[column]) {
+                    for (boolean ignoringcase : new boolean[]{false, true}) {
+                        int c = column;
+                        int[] expected = IntStream.range(0, source.size()).filter(row -> ignoringcase
+                                ? source.getDataRecord(row).getField(c).equalsIgnoreCase(value)
+                                : source.getDataRecord(row).getField(c).equals(value)).toArray();
+                        assertArrayEquals(expected, source.findRows(column, value, ignoringcase).stream().toArray());
+                    }
+                }
+            }
+        }
+    }
+
+    private List<String> names(StoredDataSet dataset) {
+        return TestDataSets.values(dataset.getStream(), "Name");
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2022 Richard Linsdale (richard at theretiredprogrammer.uk).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.theretiredprogrammer.reportwriter.datasource;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+// The stored datasets, and views of them, used by the datasource tests
+class TestDataSets {
+
+    // a dataset of rowcount rows, each row's fields made from its row number
+    static StoredDataSet create(List<String> headers, int rowcount, IntFunction<List<String>> fields) {
+        StoredDataSet dataset = new StoredDataSet(headers);
+        for (int row = 0; row < rowcount; row++) {
+            dataset.insertDataRecord(fields.apply(row));
+        }
+        return dataset;
+    }
+
+    // a view of the dataset's records which pass the filter
+    static StoredDataSet view(StoredDataSet dataset, Predicate<DataRecord> filter) {
+        return view(dataset, dataset.getStream().filter(filter));
+    }
+
+    // a view of the dataset's records which pass the filter, in the order given
+    static StoredDataSet view(StoredDataSet dataset, Predicate<DataRecord> filter, Comparator<DataRecord> order) {
+        return view(dataset, dataset.getStream().filter(filter).sorted(order));
+    }
+
+    private static StoredDataSet view(StoredDataSet dataset, Stream<DataRecord> records) {
+        return dataset.createDataRecordCursor().createDataSetStream(records).createStoredDataSet();
+    }
+
+    // the field's value in each of the records
+    static List<String> values(Stream<DataRecord> records, String field) {
+        return records.map(record -> record.get(field)).toList();
+    }
+}